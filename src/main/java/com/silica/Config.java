@@ -46,12 +46,18 @@ public final class Config {
     public static final String KEY_HOST_ADDRESS = "host.address";
     public static final String KEY_LISTEN_PORT1 = "listen.port.1";
     public static final String KEY_LISTEN_PORT2 = "listen.port.2";
+    public static final String KEY_NETTY_LISTEN_PORT = "netty.listen.port";
+    public static final String KEY_NETTY_CALL_TIMEOUT_MSEC = "netty.call.timeout.msec";
     public static final String KEY_RMIREGISTRY_COMMAND = "rmiregistry.command";
     public static final String KEY_JAVA_HOME = "java.home";
     public static final String KEY_CLASS_PATHS = "class.paths";
     public static final String KEY_SERVICE_CLASS = "service.class";
     public static final String KEY_CHARSET = "charset";
     public static final String KEY_CLONE_PATHS = "clone.paths";
+    public static final String KEY_CLONE_MODE = "clone.mode";
+    public static final String KEY_CLONE_PARALLELISM = "clone.parallelism";
+    public static final String KEY_CLONE_DELTA = "clone.delta";
+    public static final String KEY_CLONE_DELTA_MIN_BYTES = "clone.delta.min.bytes";
     public static final String KEY_ACTIVATION_COMMAND = "activation.command";
     public static final String KEY_DEACTIVATION_COMMAND = "deactivation.command";
     public static final String KEY_SSH_PORT = "ssh.port";
@@ -61,6 +67,25 @@ public final class Config {
     public static final String KEY_SSH_TIMEOUT_MSEC = "ssh.timeout.msec";
     public static final String KEY_JOB_TIMEOUT_MSEC = "job.timeout.msec";
     public static final String KEY_KEEP_DEPLOYED_LAST = "keep.deployed.last";
+    public static final String KEY_JOB_EXECUTOR = "job.executor";
+    public static final String KEY_WARM_UP_ON_BOOT = "warm.up.on.boot";
+    public static final String KEY_JOB_HEDGE_PERCENTILE = "job.hedge.percentile";
+    public static final String KEY_JOB_RETRY_MAX_ATTEMPTS = "job.retry.max.attempts";
+    public static final String KEY_JOB_RETRY_BACKOFF_MSEC = "job.retry.backoff.msec";
+    public static final String KEY_JOB_RETRY_BACKOFF_MAX_MSEC = "job.retry.backoff.max.msec";
+    public static final String KEY_SERVER_WEIGHT = "server.weight";
+    public static final String KEY_SERVER_MAX_IN_FLIGHT = "server.max.in.flight";
+    public static final String KEY_SERVER_MAX_IN_FLIGHT_MODE = "server.max.in.flight.mode";
+    public static final String KEY_SERVER_SATURATION_POLICY = "server.saturation.policy";
+    public static final String KEY_SERVER_ADDRESSES_FILE = "server.addresses.file";
+    public static final String KEY_SERVER_ADDRESSES_FILE_INTERVAL_MSEC = "server.addresses.file.interval.msec";
+    public static final String KEY_SERVER_DRAIN_TIMEOUT_MSEC = "server.drain.timeout.msec";
+    public static final String KEY_HEALTH_CHECK_INTERVAL_MSEC = "health.check.interval.msec";
+    public static final String KEY_HEALTH_CHECK_TIMEOUT_MSEC = "health.check.timeout.msec";
+    public static final String KEY_CIRCUIT_BREAKER_FAILURES = "circuit.breaker.failures";
+    public static final String KEY_CIRCUIT_BREAKER_OPEN_MSEC = "circuit.breaker.open.msec";
+    public static final String KEY_LOCAL_FAST_PATH = "local.fast.path";
+    public static final String KEY_LOCAL_COPY_ON_SUBMIT = "local.copy.on.submit";
 
     private final ResourceLoader<Map<String, String>, InputStream> resource = new ConfigLoader();
     private Map<String, String> props;
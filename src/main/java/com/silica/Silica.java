@@ -17,13 +17,34 @@ package com.silica;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.lang.reflect.Method;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -34,9 +55,16 @@ import org.apache.commons.cli.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.silica.job.BatchJobExecutor;
 import com.silica.job.Callback;
+import com.silica.job.Idempotent;
 import com.silica.job.Job;
 import com.silica.job.JobExecutor;
+import com.silica.job.JobFactory;
+import com.silica.job.JobToken;
+import com.silica.job.LatencyRecorder;
+import com.silica.job.Reducer;
+import com.silica.rpc.ProxyService;
 import com.silica.rpc.server.Server;
 import com.silica.rpc.server.ServerSelector;
 import com.silica.service.Service;
@@ -56,7 +84,25 @@ public final class Silica {
     private static Config GLOBAL_CONFIG;
     private static Class<? extends Service> SERVICE_CLASS;
 
-    private static ExecutorService EXECUTOR_POOL = Executors.newWorkStealingPool();
+    /*
+     * The latencies of the recent jobs of each job class, and the percentile of them to hedge, or -1 if disabled.
+     */
+    private static final ConcurrentMap<Class<?>, LatencyRecorder> JOB_LATENCIES = new ConcurrentHashMap<Class<?>, LatencyRecorder>();
+    private static volatile double HEDGE_PERCENTILE = -1;
+
+    private static final String EXECUTOR_WORK_STEALING = "work-stealing";
+    private static final String EXECUTOR_VIRTUAL = "virtual";
+
+    private static volatile ExecutorService EXECUTOR_POOL = Executors.newWorkStealingPool();
+    private static ScheduledExecutorService TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "silica-timeout");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     /**
      * A configuration value from a global schema, which return a same value from any node.
@@ -88,6 +134,10 @@ public final class Silica {
      */
     public static void boot(String[] args) {
         new Bootstrap().boot(args);
+
+        if (Boolean.parseBoolean(getGlobalConfig(Config.KEY_WARM_UP_ON_BOOT))) {
+            warmUp();
+        }
     }
 
     /**
@@ -97,6 +147,15 @@ public final class Silica {
         boot(new String[0]);
     }
 
+    /**
+     * Activate all the servers at once, so that the first jobs do not wait for the servers to start.
+     * 
+     * @return whether each server is ready, by address
+     */
+    public static Map<String, Boolean> warmUp() {
+        return ServerSelector.createSelector().warmUp();
+    }
+
     /**
      * A base directory of the node.
      * 
@@ -191,22 +250,7 @@ public final class Silica {
      */
     public static <T extends Serializable> T execute(Job<T> job, long jobTimeoutMsec) throws ServiceException {
 
-        JobExecutor<T> executor = new JobExecutor<T>(job);
-        Future<T> future = EXECUTOR_POOL.submit(executor);
-        Exception err = null;
-        try {
-            return future.get(jobTimeoutMsec, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            LOG.info(job.toString(), e);
-            err = e;
-        } catch (ExecutionException e) {
-            LOG.error(job.toString(), e);
-            err = e;
-        } catch (TimeoutException e) {
-            LOG.warn(job.toString(), e);
-            err = e;
-        }
-        throw new ServiceException(job.toString(), err);
+        return getResult(submit(job, jobTimeoutMsec), job.toString());
     }
 
     /**
@@ -218,8 +262,7 @@ public final class Silica {
      */
     public static <T extends Serializable> Future<T> executeAsync(Job<T> job) {
 
-        JobExecutor<T> executor = new JobExecutor<T>(job);
-        return EXECUTOR_POOL.submit(executor);
+        return submit(job, 0L);
     }
 
     /**
@@ -243,35 +286,412 @@ public final class Silica {
      */
     public static <T extends Serializable> void executeAsync(final Job<T> job, final Callback<T> jobCallback, final long jobTimeoutMsec) {
 
-        JobExecutor<T> executor = new JobExecutor<T>(job);
-        final Future<T> future = EXECUTOR_POOL.submit(executor);
-        EXECUTOR_POOL.execute(new Runnable() {
+        submit(job, jobTimeoutMsec).whenComplete((result, e) -> {
+            if (e != null) {
+                LOG.error(job.toString(), e);
+                return;
+            }
+            jobCallback.execute(result);
+        });
+    }
+
+    /**
+     * Execute job asynchronous.
+     * 
+     * @param job
+     * @param T a type of a result
+     * @return a {@link CompletableFuture} object of a result of the job, which completes exceptionally with a
+     *         {@link ServiceException} when the job fails or times out
+     */
+    public static <T extends Serializable> CompletableFuture<T> submit(Job<T> job) {
+        return submit(job, getJobTimeout());
+    }
+
+    /**
+     * Execute job asynchronous.
+     * 
+     * @param job
+     * @param jobTimeoutMsec
+     *            a timeout of the job, or zero or less for no timeout
+     * @param T a type of a result
+     * @return a {@link CompletableFuture} object of a result of the job, which completes exceptionally with a
+     *         {@link ServiceException} when the job fails or times out
+     */
+    public static <T extends Serializable> CompletableFuture<T> submit(Job<T> job, long jobTimeoutMsec) {
+
+        final long start = System.currentTimeMillis();
+        final LatencyRecorder latency = getLatencyRecorder(job.getClass());
+        long hedgeDelay = job instanceof Idempotent ? getHedgeDelay(latency) : -1L;
+
+        CompletableFuture<T> future;
+        if (hedgeDelay >= 0) {
+            future = submitHedged(job, jobTimeoutMsec, hedgeDelay);
+        } else {
+            JobToken token = new JobToken(jobTimeoutMsec);
+            future = submit(new JobExecutor<T>(job, null, token), token, job.toString());
+        }
+        future.whenComplete((r, e) -> {
+            if (e == null) {
+                latency.record(System.currentTimeMillis() - start);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Execute the job, and send a duplicate of it to another server if it has not returned after the delay. The first
+     * result is taken and the other execution is cancelled. If the job has not been sent to a server yet after the
+     * delay, the duplicate is delayed again.
+     */
+    private static <T extends Serializable> CompletableFuture<T> submitHedged(final Job<T> job, long jobTimeoutMsec, final long hedgeDelayMsec) {
+
+        final String description = job.toString();
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        final List<CompletableFuture<T>> attempts = new CopyOnWriteArrayList<CompletableFuture<T>>();
+        final AtomicInteger running = new AtomicInteger(1);
+        final BiConsumer<T, Throwable> complete = (r, e) -> {
+            if (e == null) {
+                result.complete(r);
+            } else if (running.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+        };
+
+        final JobToken token = new JobToken(jobTimeoutMsec);
+        CompletableFuture<T> primary = submit(new JobExecutor<T>(job, null, token), token, description);
+        attempts.add(primary);
+        primary.whenComplete(complete);
+
+        final AtomicReference<ScheduledFuture<?>> hedge = new AtomicReference<ScheduledFuture<?>>();
+        hedge.set(TIMEOUT_SCHEDULER.schedule(new Runnable() {
 
             @Override
             public void run() {
+                if (result.isDone()) {
+                    return;
+                }
+                Server primaryServer = token.getServer();
+                if (primaryServer == null) {
+                    // The job is still waiting for a server.
+                    hedge.set(TIMEOUT_SCHEDULER.schedule(this, Math.max(hedgeDelayMsec, 1L), TimeUnit.MILLISECONDS));
+                    return;
+                }
+                Server server;
                 try {
-                    T result = getResult(future, jobTimeoutMsec, job.toString());
-                    jobCallback.execute(result);
-                } catch (ServiceException e) {
-                    LOG.error("", e);
+                    server = ServerSelector.createSelector().select(new ProxyService(SERVICE_CLASS), job, Collections.singleton(primaryServer));
+                } catch (Exception e) {
+                    LOG.debug("There is no other server to send a duplicate of the job.", e);
+                    return;
+                }
+                running.incrementAndGet();
+                LOG.info("Send a duplicate of the job to {}: {}", server.getServerContext().getPublicAddress(), description);
+
+                JobToken duplicateToken = new JobToken(token.getDeadline() > 0 ? Math.max(1L, token.getRemainingMsec()) : 0L);
+                CompletableFuture<T> duplicate = submit(new JobExecutor<T>(job, server, duplicateToken), duplicateToken, description);
+                attempts.add(duplicate);
+                duplicate.whenComplete(complete);
+                if (result.isDone()) {
+                    duplicate.cancel(true);
                 }
             }
+        }, hedgeDelayMsec, TimeUnit.MILLISECONDS));
+
+        result.whenComplete((r, e) -> {
+            hedge.get().cancel(false);
+            for (CompletableFuture<T> attempt : attempts) {
+                attempt.cancel(true);
+            }
         });
+        return result;
+    }
+
+    /**
+     * A delay to send a duplicate of an idempotent job.
+     * 
+     * @return the delay in milli seconds, or -1 if hedging is disabled or there are not enough latencies recorded yet
+     */
+    private static long getHedgeDelay(LatencyRecorder latency) {
+        double percentile = HEDGE_PERCENTILE;
+        if (percentile < 0) {
+            return -1L;
+        }
+        return latency.percentile(percentile);
+    }
+
+    private static LatencyRecorder getLatencyRecorder(Class<?> jobClass) {
+        LatencyRecorder latency = JOB_LATENCIES.get(jobClass);
+        if (latency != null) {
+            return latency;
+        }
+        latency = new LatencyRecorder(1024, 100);
+        LatencyRecorder current = JOB_LATENCIES.putIfAbsent(jobClass, latency);
+        return current != null ? current : latency;
     }
 
-    private static <T extends Serializable> T getResult(Future<T> future, long jobTimeoutMsec, String jobDescription) throws ServiceException {
+    /**
+     * @return the percentile of {@link Config#KEY_JOB_HEDGE_PERCENTILE}, or -1 if it is empty or invalid
+     */
+    private static double parseHedgePercentile() {
+        String percentile = GLOBAL_CONFIG.get(Config.KEY_JOB_HEDGE_PERCENTILE);
+        if (percentile == null || percentile.trim().length() == 0) {
+            return -1;
+        }
+        try {
+            double p = Double.parseDouble(percentile.trim());
+            if (p >= 0 && p <= 100) {
+                return p;
+            }
+        } catch (NumberFormatException e) {
+            // Invalid.
+        }
+        LOG.warn("Invalid {}: [{}]. Hedging is disabled.", Config.KEY_JOB_HEDGE_PERCENTILE, percentile);
+        return -1;
+    }
+
+    /**
+     * Run the executor on the pool. The job is cancelled on the server when it times out or the future is cancelled.
+     */
+    private static <T> CompletableFuture<T> submit(final Callable<T> executor, final JobToken token, final String jobDescription) {
+
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        final Future<?> task = EXECUTOR_POOL.submit(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    result.complete(executor.call());
+                } catch (Exception e) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+        final ScheduledFuture<?> timeout = token.getDeadline() <= 0 ? null : TIMEOUT_SCHEDULER.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                TimeoutException e = new TimeoutException(MessageFormat.format("The job did not complete in {0} msec.", String.valueOf(token.getTimeoutMsec())));
+                if (result.completeExceptionally(new ServiceException(jobDescription, e))) {
+                    LOG.warn(jobDescription, e);
+                    cancel(token);
+                }
+            }
+        }, token.getRemainingMsec(), TimeUnit.MILLISECONDS);
+
+        result.whenComplete((r, e) -> {
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            if (e != null) {
+                task.cancel(true);
+            }
+            if (result.isCancelled()) {
+                cancel(token);
+            }
+        });
+        return result;
+    }
+
+    private static void cancel(final JobToken token) {
+        EXECUTOR_POOL.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                token.cancel();
+            }
+        });
+    }
+
+    /**
+     * Execute jobs synchronous. Each server receives its share of the jobs in a single call.
+     * 
+     * @param jobs
+     * @param T a type of a result
+     * @return results of the jobs in the same order as the jobs
+     * @throws ServiceException
+     */
+    public static <T extends Serializable> List<T> executeAll(Collection<? extends Job<T>> jobs) throws ServiceException {
+        return executeAll(jobs, getJobTimeout());
+    }
+
+    /**
+     * Execute jobs synchronous. Each server receives its share of the jobs in a single call.
+     * 
+     * @param jobs
+     * @param jobTimeoutMsec
+     * @param T a type of a result
+     * @return results of the jobs in the same order as the jobs
+     * @throws ServiceException
+     */
+    public static <T extends Serializable> List<T> executeAll(Collection<? extends Job<T>> jobs, long jobTimeoutMsec) throws ServiceException {
+        return executeAll(ServerSelector.createSelector(), jobs, jobTimeoutMsec);
+    }
+
+    /**
+     * Execute jobs synchronous on the servers of the selector.
+     */
+    static <T extends Serializable> List<T> executeAll(ServerSelector selector, Collection<? extends Job<T>> jobs, long jobTimeoutMsec) throws ServiceException {
+
+        List<Job<T>> all = new ArrayList<Job<T>>(jobs);
+        if (all.isEmpty()) {
+            return new ArrayList<T>();
+        }
+        String description = MessageFormat.format("batch of {0} jobs", String.valueOf(all.size()));
+
+        Map<Server, List<Integer>> shares = selector.distribute(new ProxyService(SERVICE_CLASS), all);
+        List<List<Integer>> indexes = new ArrayList<List<Integer>>(shares.size());
+        List<CompletableFuture<List<T>>> futures = new ArrayList<CompletableFuture<List<T>>>(shares.size());
+
+        for (Entry<Server, List<Integer>> share : shares.entrySet()) {
+            List<Job<T>> part = new ArrayList<Job<T>>(share.getValue().size());
+            for (int i : share.getValue()) {
+                part.add(all.get(i));
+            }
+            indexes.add(share.getValue());
+            JobToken token = new JobToken(jobTimeoutMsec);
+            futures.add(submit(new BatchJobExecutor<T>(share.getKey(), part, token), token, description));
+        }
+
+        List<T> results = new ArrayList<T>(Collections.<T> nCopies(all.size(), null));
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                List<T> part = getResult(futures.get(i), description);
+                List<Integer> index = indexes.get(i);
+                for (int j = 0; j < index.size(); j++) {
+                    results.set(index.get(j), part.get(j));
+                }
+            }
+        } finally {
+            for (CompletableFuture<List<T>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Execute a job on every active server and combine the results in order of arrival.
+     * 
+     * @param factory
+     *            creates a job for each server
+     * @param identity
+     *            an initial accumulation
+     * @param reducer
+     *            combines a result into the accumulation
+     * @param T a type of a result
+     * @param A a type of the accumulation
+     * @return the accumulation of all the results
+     * @throws ServiceException
+     */
+    public static <T extends Serializable, A> A scatterGather(JobFactory<T> factory, A identity, Reducer<T, A> reducer) throws ServiceException {
+        return scatterGather(factory, identity, reducer, getJobTimeout());
+    }
+
+    /**
+     * Execute a job on every active server and combine the results in order of arrival.
+     * 
+     * @param factory
+     *            creates a job for each server
+     * @param identity
+     *            an initial accumulation
+     * @param reducer
+     *            combines a result into the accumulation
+     * @param jobTimeoutMsec
+     *            a timeout of all the jobs, or zero or less for no timeout
+     * @param T a type of a result
+     * @param A a type of the accumulation
+     * @return the accumulation of all the results
+     * @throws ServiceException
+     */
+    public static <T extends Serializable, A> A scatterGather(JobFactory<T> factory, A identity, Reducer<T, A> reducer, long jobTimeoutMsec)
+            throws ServiceException {
+
+        String description = "scatter-gather: " + factory;
+        long deadline = System.currentTimeMillis() + jobTimeoutMsec;
+
+        final BlockingQueue<CompletableFuture<T>> completed = new LinkedBlockingQueue<CompletableFuture<T>>();
+        final Set<CompletableFuture<T>> pending = ConcurrentHashMap.newKeySet();
+
+        for (Server server : ServerSelector.createSelector().selectAll().values()) {
+            if (!server.getServerContext().isEnable()) {
+                continue;
+            }
+            Job<T> job = factory.create(server.getServerContext());
+            JobToken token = new JobToken(jobTimeoutMsec);
+            final CompletableFuture<T> future = submit(new JobExecutor<T>(job, server, token), token, job.toString());
+            pending.add(future);
+            future.whenComplete((r, e) -> completed.add(future));
+        }
+        int remaining = pending.size();
+        if (remaining == 0) {
+            throw new IllegalStateException("Server are unavailable.");
+        }
+
+        A accumulation = identity;
+        try {
+            for (; remaining > 0; remaining--) {
+                CompletableFuture<T> future = jobTimeoutMsec <= 0
+                        ? completed.take()
+                        : completed.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    TimeoutException e = new TimeoutException(MessageFormat.format("The jobs did not complete in {0} msec.", String.valueOf(jobTimeoutMsec)));
+                    LOG.warn(description, e);
+                    throw new ServiceException(description, e);
+                }
+                pending.remove(future);
+                accumulation = reducer.reduce(accumulation, getResult(future, description));
+            }
+        } catch (InterruptedException e) {
+            LOG.info(description, e);
+            throw new ServiceException(description, e);
+        } finally {
+            for (CompletableFuture<T> future : pending) {
+                future.cancel(true);
+            }
+        }
+        return accumulation;
+    }
+
+    /**
+     * Create a pool to execute jobs on the client.
+     * <p>
+     * A job blocks its thread during the whole remote call, so virtual threads let the client keep far more jobs in
+     * flight than the number of cores. They fall back to a work-stealing pool on runtimes without virtual threads.
+     * </p>
+     * 
+     * @param executor
+     *            the value of {@link Config#KEY_JOB_EXECUTOR}
+     */
+    static ExecutorService createExecutorPool(String executor) {
+
+        if (EXECUTOR_VIRTUAL.equals(executor)) {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                ExecutorService pool = (ExecutorService) factory.invoke(null);
+                LOG.info("Execute jobs on virtual threads.");
+                return pool;
+            } catch (Exception e) {
+                LOG.warn("Virtual threads are not available on Java {}. Execute jobs on a work-stealing pool.", System.getProperty("java.version"));
+            }
+        } else if (executor != null && executor.length() > 0 && !EXECUTOR_WORK_STEALING.equals(executor)) {
+            LOG.warn("Unknown job executor [{}]. Execute jobs on a work-stealing pool.", executor);
+        }
+        return Executors.newWorkStealingPool();
+    }
+
+    /**
+     * Wait for the future which is completed by the job or by its timeout.
+     */
+    private static <T> T getResult(Future<T> future, String jobDescription) throws ServiceException {
         Exception exception = null;
         try {
-            return future.get(jobTimeoutMsec, TimeUnit.MILLISECONDS);
+            return future.get();
         } catch (InterruptedException e) {
+            future.cancel(true);
             LOG.info(jobDescription, e);
             exception = e;
         } catch (ExecutionException e) {
             LOG.error(jobDescription, e);
             exception = e;
-        } catch (TimeoutException e) {
-            LOG.warn(jobDescription, e);
-            exception = e;
         }
         throw new ServiceException(jobDescription, exception);
     }
@@ -280,6 +700,7 @@ public final class Silica {
      * Shutdown all jobs.
      */
     protected static void shutdownAllJob() {
+        TIMEOUT_SCHEDULER.shutdownNow();
         EXECUTOR_POOL.shutdown();
         try {
             if (!EXECUTOR_POOL.awaitTermination(1, TimeUnit.SECONDS)) {
@@ -447,6 +868,12 @@ public final class Silica {
                 LOG.error("Could not difine service class.", e);
             }
 
+            HEDGE_PERCENTILE = parseHedgePercentile();
+
+            ExecutorService pool = EXECUTOR_POOL;
+            EXECUTOR_POOL = createExecutorPool(getGlobalConfig(Config.KEY_JOB_EXECUTOR));
+            pool.shutdown();
+
             return cmd;
         }
     }
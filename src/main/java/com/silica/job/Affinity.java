@@ -0,0 +1,30 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.job;
+
+/**
+ * A job which prefers the server of the other jobs with the same affinity key, e.g. to use a warm cache of a
+ * partition of the data on the server.
+ * 
+ * @see com.silica.rpc.server.ConsistentHashServerSelector
+ */
+public interface Affinity {
+
+    /**
+     * @return a key of the affinity, or null if the job can run on any server
+     */
+    public String getAffinityKey();
+}
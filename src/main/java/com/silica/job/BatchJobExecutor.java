@@ -0,0 +1,66 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.job;
+
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.silica.Silica;
+import com.silica.rpc.ProxyService;
+import com.silica.rpc.server.Server;
+import com.silica.service.Service;
+import com.silica.service.ServiceException;
+
+/**
+ * <p>Executes jobs on a server in a single call</p>
+ * 
+ * @see java.util.concurrent.Callable
+ * 
+ * @param <R>
+ *            Result of the job
+ */
+public class BatchJobExecutor<R extends Serializable> implements Callable<List<R>> {
+
+    private final Server server;
+    private final List<Job<R>> jobs;
+    private final JobToken token;
+
+    public BatchJobExecutor(Server server, List<Job<R>> jobs, JobToken token) {
+        this.server = server;
+        this.jobs = jobs;
+        this.token = token;
+    }
+
+    public JobToken getToken() {
+        return token;
+    }
+
+    @Override
+    public List<R> call() throws ServiceException {
+
+        try {
+
+            Service service = new ProxyService(Silica.getServiceClass(), server);
+            return service.executeBatch(jobs, token);
+
+        } catch (RemoteException e) {
+
+            throw new ServiceException("The executed jobs return the exception", e);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import java.util.concurrent.Callable;
 
 import com.silica.Silica;
 import com.silica.rpc.ProxyService;
+import com.silica.rpc.server.Server;
 import com.silica.service.Service;
 import com.silica.service.ServiceException;
 
@@ -37,9 +38,34 @@ public class JobExecutor<R extends Serializable> implements Callable<R>, Seriali
     private static final long serialVersionUID = -5579620009129572616L;
 
     private final Job<R> job;
+    private final transient Server server;
+    private final JobToken token;
 
     public JobExecutor(Job<R> job) {
+        this(job, null);
+    }
+
+    /**
+     * An executor which executes the job on the server instead of a selected one.
+     */
+    public JobExecutor(Job<R> job, Server server) {
+        this(job, server, new JobToken(0L));
+    }
+
+    /**
+     * An executor which executes the job with the deadline and the cancellation of the token.
+     * 
+     * @param server
+     *            a server to execute the job, or null to select one
+     */
+    public JobExecutor(Job<R> job, Server server, JobToken token) {
         this.job = job;
+        this.server = server;
+        this.token = token;
+    }
+
+    public JobToken getToken() {
+        return token;
     }
 
     @Override
@@ -47,8 +73,8 @@ public class JobExecutor<R extends Serializable> implements Callable<R>, Seriali
 
         try {
 
-            Service service = new ProxyService(Silica.getServiceClass());
-            return service.execute(job);
+            Service service = new ProxyService(Silica.getServiceClass(), server);
+            return service.execute(job, token);
 
         } catch (RemoteException e) {
 
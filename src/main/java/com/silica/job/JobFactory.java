@@ -0,0 +1,28 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.job;
+
+import java.io.Serializable;
+
+import com.silica.rpc.server.ServerContext;
+
+/**
+ * Creates a job for each server.
+ */
+public interface JobFactory<R extends Serializable> {
+
+    Job<R> create(ServerContext server);
+}
@@ -0,0 +1,151 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.job;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.silica.rpc.server.Server;
+import com.silica.service.Service;
+import com.silica.service.ServiceException;
+
+/**
+ * <p>A deadline and a cancellation handle of a job.</p>
+ * The token is sent to the service together with the job. The deadline is carried as the remaining time, so it does
+ * not depend on the clocks of the nodes being in sync.
+ */
+public class JobToken implements Serializable {
+
+    private static final long serialVersionUID = -4214660406327541128L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(JobToken.class);
+
+    private final String id = UUID.randomUUID().toString();
+    private final long timeoutMsec;
+    /*
+     * Only set on a received token: the remaining time is computed when the token is written.
+     */
+    private long remainingMsec;
+
+    private transient long deadline;
+    private transient volatile boolean cancelled;
+    private transient volatile Server server;
+    private transient volatile Class<? extends Service> serviceClass;
+
+    /**
+     * @param timeoutMsec
+     *            a timeout of the job, or zero or less for no timeout
+     */
+    public JobToken(long timeoutMsec) {
+        this.timeoutMsec = timeoutMsec;
+        this.deadline = timeoutMsec > 0 ? System.currentTimeMillis() + timeoutMsec : 0L;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getTimeoutMsec() {
+        return timeoutMsec;
+    }
+
+    /**
+     * @return a deadline on the clock of this node, or zero if the job has no timeout
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return milli seconds until the deadline, or {@link Long#MAX_VALUE} if the job has no timeout
+     */
+    public long getRemainingMsec() {
+        return deadline > 0 ? deadline - System.currentTimeMillis() : Long.MAX_VALUE;
+    }
+
+    public boolean isExpired() {
+        return deadline > 0 && System.currentTimeMillis() >= deadline;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return the server which the job has been sent to, or null if it has not been sent yet
+     */
+    public Server getServer() {
+        return server;
+    }
+
+    /**
+     * Record the server which the job has been sent to, so that a cancellation can reach it.
+     */
+    public void dispatched(Class<? extends Service> serviceClass, Server server) {
+        this.serviceClass = serviceClass;
+        this.server = server;
+        if (cancelled) {
+            cancelRemote();
+        }
+    }
+
+    /**
+     * Cancel the job, and interrupt it on the server if it has already been sent.
+     */
+    public void cancel() {
+        cancelled = true;
+        cancelRemote();
+    }
+
+    private void cancelRemote() {
+        Server s = server;
+        if (s == null) {
+            return;
+        }
+        try {
+            s.cancel(serviceClass, this);
+        } catch (ServiceException e) {
+            LOG.warn("Could not cancel the job [{}].", id, e);
+        }
+    }
+
+    /**
+     * Write the remaining time as of now, without changing this token, which may be written by more than one thread.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", id);
+        fields.put("timeoutMsec", timeoutMsec);
+        fields.put("remainingMsec", timeoutMsec > 0 ? deadline - System.currentTimeMillis() : 0L);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        deadline = timeoutMsec > 0 ? System.currentTimeMillis() + remainingMsec : 0L;
+    }
+
+    @Override
+    public String toString() {
+        return "JobToken[" + id + "]";
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.job;
+
+import java.util.Arrays;
+
+/**
+ * Keeps latencies of recent jobs to estimate a percentile of them.
+ */
+public class LatencyRecorder {
+
+    private static final int REFRESH_INTERVAL = 64;
+
+    private final long[] samples;
+    private final int minSamples;
+    private int next;
+    private int size;
+    private long recorded;
+
+    private volatile long[] sorted = new long[0];
+
+    /**
+     * @param capacity
+     *            a number of the recent latencies to keep
+     * @param minSamples
+     *            a number of latencies required to estimate a percentile
+     */
+    public LatencyRecorder(int capacity, int minSamples) {
+        this.samples = new long[capacity];
+        this.minSamples = minSamples;
+    }
+
+    public synchronized void record(long latencyMsec) {
+        samples[next] = latencyMsec;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) {
+            size++;
+        }
+        if (++recorded % REFRESH_INTERVAL == 0 || size == minSamples) {
+            long[] s = Arrays.copyOf(samples, size);
+            Arrays.sort(s);
+            sorted = s;
+        }
+    }
+
+    /**
+     * @param percentile
+     *            a percentile between 0 and 100
+     * @return the latency in milli seconds, or -1 if there are not enough samples
+     */
+    public long percentile(double percentile) {
+        long[] s = sorted;
+        if (s.length == 0 || s.length < minSamples) {
+            return -1L;
+        }
+        int index = (int) Math.ceil(percentile / 100 * s.length) - 1;
+        return s[Math.min(Math.max(index, 0), s.length - 1)];
+    }
+}
@@ -50,10 +50,23 @@ public class Resource implements Serializable, Closeable {
     }
 
     public Resource(String path, String as) {
+        this(path, as, getPermission(new File(path)));
+    }
+
+    /**
+     * @param permission
+     *            the permission of the file, as {@link #getPermission(File)}
+     */
+    public Resource(String path, String as, int permission) {
         this.path = path;
         this.name = as;
+        this.permission = permission;
+    }
 
-        File f = new File(path);
+    /**
+     * @return the permission of the file for the owner, in the octal form
+     */
+    public static int getPermission(File f) {
         int p = 0;
         if (f.canRead())
             p += 4;
@@ -61,7 +74,7 @@ public class Resource implements Serializable, Closeable {
             p += 2;
         if (f.canExecute())
             p += 1;
-        permission = p;
+        return p;
     }
 
     public ResourceWriter writer() {
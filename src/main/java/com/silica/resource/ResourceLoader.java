@@ -15,11 +15,13 @@
  */
 package com.silica.resource;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 
+import com.silica.rpc.Resources;
 import com.silica.rpc.server.ServerContext;
 import com.silica.rpc.server.ServerSelector;
 
@@ -33,6 +35,39 @@ public abstract class ResourceLoader<R, P> {
 
     private static final Pattern PATH_SEP = Pattern.compile("^[\\s|\"|\']+|([\"|\']*[\\s]*[,]+[\\s]*[\"|\']*)");
 
+    private static final Definition[] NO_RESOURCES = new Definition[0];
+
+    /*
+     * The resources of the job classes, which are resolved once for each class.
+     */
+    private static final ClassValue<Definition[]> JOB_RESOURCES = new ClassValue<Definition[]>() {
+
+        @Override
+        protected Definition[] computeValue(Class<?> jobClass) {
+
+            Resources res = null;
+            try {
+
+                res = jobClass.getMethod("execute").getAnnotation(Resources.class);
+
+            } catch (Exception e) {
+                throw new RuntimeException("Job must have execute method", e);
+            }
+            if (res == null) {
+                return NO_RESOURCES;
+            }
+            String[] paths = resolvePaths(parseResourcePaths(res.path()));
+            if (paths.length == 0) {
+                return NO_RESOURCES;
+            }
+            Definition[] definitions = new Definition[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                definitions[i] = new Definition(paths[i]);
+            }
+            return definitions;
+        }
+    };
+
     protected abstract R loadResource(P path) throws IOException;
 
     public R load(P path) throws IOException {
@@ -47,28 +82,88 @@ public abstract class ResourceLoader<R, P> {
         if (paths == null || paths.length == 0) {
             return null;
         }
-        List<Resource> resources = new ArrayList<Resource>();
+        String[] resolved = resolvePaths(paths);
+        Resource[] resources = new Resource[resolved.length];
+        for (int i = 0; i < resolved.length; i++) {
+            resources[i] = new Resource(resolved[i]);
+        }
+        return resources;
+    }
+
+    /**
+     * Define the resources of the <code>execute</code> method of the job class, annotated by {@link Resources}. The
+     * annotation is read once for each class.
+     * 
+     * @return the resources, or null if the job has no resources
+     */
+    public static Resource[] defineResources(Class<?> jobClass) throws IOException {
+        Definition[] definitions = getDefinitions(jobClass);
+        if (definitions.length == 0) {
+            return null;
+        }
+        Resource[] resources = new Resource[definitions.length];
+        for (int i = 0; i < definitions.length; i++) {
+            resources[i] = definitions[i].newResource();
+        }
+        return resources;
+    }
+
+    /**
+     * @return the definitions of the resources of the job class, which are cached for each class
+     */
+    static Definition[] getDefinitions(Class<?> jobClass) {
+        return JOB_RESOURCES.get(jobClass);
+    }
+
+    private static String[] resolvePaths(String[] paths) {
+        List<String> resolved = new ArrayList<String>();
 
+        ServerContext localSc = ServerSelector.createSelector().getLocalServer().getServerContext();
         for (String path : paths) {
             if (path == null || path.isEmpty()) {
                 continue;
             }
-            ServerContext localSc = ServerSelector.createSelector().getLocalServer().getServerContext();
             if (localSc.isRootDirectory(path)) {
 
-                resources.add(new Resource(path));
+                resolved.add(path);
 
             } else {
 
-                resources.add(new Resource(localSc.getResourceDirectory() + path));
+                resolved.add(localSc.getResourceDirectory() + path);
             }
         }
-
-        return resources.toArray(new Resource[resources.size()]);
+        return resolved.toArray(new String[resolved.size()]);
     }
 
     protected static final String[] parseResourcePaths(String paths) {
 
         return PATH_SEP.split(paths);
     }
+
+    /**
+     * A resolved resource of a job class. The permission of the file is read again when the file is modified.
+     */
+    static class Definition {
+
+        private final String path;
+        private final String name;
+        private final File file;
+        private long lastModified = -1;
+        private int permission;
+
+        Definition(String path) {
+            this.path = path;
+            this.name = new Resource(path).getName();
+            this.file = new File(path);
+        }
+
+        synchronized Resource newResource() {
+            long modified = file.lastModified();
+            if (modified != lastModified) {
+                permission = Resource.getPermission(file);
+                lastModified = modified;
+            }
+            return new Resource(path, name, permission);
+        }
+    }
 }
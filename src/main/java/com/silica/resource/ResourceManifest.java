@@ -0,0 +1,180 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.resource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.rmi.RemoteException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.silica.service.Service;
+
+/**
+ * <p>Digests of the resources deployed on a server, so that only the changed resources are deployed again.</p>
+ * A resource which is not in the manifest yet is checked against the digest of the file on the server, so the
+ * resources deployed before this client started are not deployed again either.
+ */
+public class ResourceManifest {
+
+    private static final String ALGORITHM = "SHA-256";
+
+    /*
+     * The digests of the files on this node, which are valid while the files are not modified.
+     */
+    private static final ConcurrentMap<String, Digest> DIGESTS = new ConcurrentHashMap<String, Digest>();
+
+    private final ConcurrentMap<String, String> deployed = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Select the resources which differ from the ones on the server.
+     * 
+     * @param service
+     *            the service to ask the digests of the resources which are not in the manifest
+     * @param destinationDirectoryOnTheTargetServer
+     *            the directory where the resources are deployed
+     */
+    public List<Resource> changed(Service service, String destinationDirectoryOnTheTargetServer, Resource... resources)
+            throws IOException {
+
+        List<String> unknown = new ArrayList<String>();
+        for (Resource resource : resources) {
+            String name = getName(resource);
+            if (!deployed.containsKey(name)) {
+                unknown.add(name);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            Map<String, String> remote = service.getResourceDigests(destinationDirectoryOnTheTargetServer,
+                    unknown.toArray(new String[unknown.size()]));
+            deployed.putAll(remote);
+        }
+
+        List<Resource> changed = new ArrayList<Resource>();
+        for (Resource resource : resources) {
+            if (!digest(new File(resource.getPath())).equals(deployed.get(getName(resource)))) {
+                changed.add(resource);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Record the resources which have been deployed on the server.
+     */
+    public void deployed(List<Resource> resources) throws IOException {
+        for (Resource resource : resources) {
+            deployed.put(getName(resource), digest(new File(resource.getPath())));
+        }
+    }
+
+    /**
+     * Forget the resources on the server, e.g. when the server has been disactivated.
+     */
+    public void clear() {
+        deployed.clear();
+    }
+
+    /**
+     * The name of the resource on the server.
+     */
+    private static String getName(Resource resource) {
+        return new File(resource.getName()).getName();
+    }
+
+    /**
+     * @return a hex string of the digest of the file, which is cached while the file is not modified
+     */
+    public static String digest(File file) throws IOException {
+
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        Digest digest = DIGESTS.get(path);
+        if (digest != null && digest.lastModified == lastModified && digest.length == length) {
+            return digest.value;
+        }
+        String value = compute(file);
+        DIGESTS.put(path, new Digest(lastModified, length, value));
+        return value;
+    }
+
+    /**
+     * Get the digests of the files in the directory.
+     * 
+     * @return the digests by name, except the files which do not exist
+     * @see Service#getResourceDigests(String, String...)
+     */
+    public static Map<String, String> digests(String directory, String... names) throws RemoteException {
+        Map<String, String> digests = new HashMap<String, String>();
+        for (String name : names) {
+            File f = new File(directory, new File(name).getName());
+            if (!f.isFile()) {
+                continue;
+            }
+            try {
+                digests.put(name, digest(f));
+            } catch (IOException e) {
+                throw new RemoteException("Could not get the digest of the resource: " + f, e);
+            }
+        }
+        return digests;
+    }
+
+    private static String compute(File file) throws IOException {
+
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buf = new byte[8192];
+        try (InputStream in = new FileInputStream(file)) {
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                md.update(buf, 0, len);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : md.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static class Digest {
+
+        private final long lastModified;
+        private final long length;
+        private final String value;
+
+        Digest(long lastModified, long length, String value) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.value = value;
+        }
+    }
+}
@@ -16,12 +16,32 @@
 package com.silica.rpc;
 
 import java.io.File;
+import java.io.Serializable;
 import java.nio.file.Paths;
+import java.rmi.RemoteException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.silica.job.Job;
+import com.silica.job.JobToken;
 import com.silica.resource.Resource;
+import com.silica.resource.ResourceManifest;
+import com.silica.service.LoadReport;
 import com.silica.service.Service;
 import com.silica.service.ServiceException;
 
@@ -31,6 +51,26 @@ public abstract class AbstractRpcService implements Service {
 
     private static final Logger LOG = LoggerFactory.getLogger(AbstractRpcService.class);
 
+    /*
+     * How long the cancellation of a job without a deadline waits for the job to start.
+     */
+    private static final long TOMBSTONE_MSEC = 60000L;
+
+    private static final ConcurrentMap<String, Execution> EXECUTIONS = new ConcurrentHashMap<String, Execution>();
+    /*
+     * The ids of the jobs which have been cancelled, so that a job cancelled before it starts does not run.
+     */
+    private static final Set<String> TOMBSTONES = ConcurrentHashMap.newKeySet();
+    private static final ScheduledExecutorService DEADLINE_SCHEDULER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "silica-deadline");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     protected AbstractRpcService() {
     }
 
@@ -57,4 +97,148 @@ public abstract class AbstractRpcService implements Service {
             throw new ServiceException("There is an error when deploying resources", e);
         }
     }
+
+    @Override
+    public Map<String, String> getResourceDigests(String destdir, String... names) throws RemoteException {
+        return ResourceManifest.digests(destdir, names);
+    }
+
+    @Override
+    public <R extends Serializable> R execute(Job<R> job, JobToken token) throws RemoteException {
+
+        Execution execution = start(token);
+        try {
+            return execute(job);
+        } finally {
+            finish(token, execution);
+        }
+    }
+
+    @Override
+    public <R extends Serializable> List<R> executeBatch(List<Job<R>> jobs, JobToken token) throws RemoteException {
+
+        Execution execution = start(token);
+        try {
+            List<R> results = new ArrayList<R>(jobs.size());
+            for (Job<R> job : jobs) {
+                ensureRunnable(token, execution);
+                results.add(execute(job));
+            }
+            return results;
+        } finally {
+            finish(token, execution);
+        }
+    }
+
+    /**
+     * Cancel the job. A job which has not started yet is cancelled when it starts, unless it starts after its deadline
+     * or, without a deadline, after {@link #TOMBSTONE_MSEC}.
+     */
+    @Override
+    public void cancel(JobToken token) throws RemoteException {
+
+        final String id = token.getId();
+        // Leave the tombstone first, so that a job starting meanwhile sees either of the tombstone or the cancel.
+        if (TOMBSTONES.add(id)) {
+            long ttl = token.getDeadline() > 0 ? Math.max(token.getRemainingMsec(), 0L) : TOMBSTONE_MSEC;
+            DEADLINE_SCHEDULER.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    TOMBSTONES.remove(id);
+                }
+            }, ttl, TimeUnit.MILLISECONDS);
+        }
+        LOG.info("Cancel the job: {}", token);
+
+        Execution execution = EXECUTIONS.get(id);
+        if (execution != null) {
+            execution.cancel();
+        }
+    }
+
+    /**
+     * Report the jobs running with a token. The RPC runtime does not tell the calls waiting for a thread, so the
+     * queued jobs are reported as zero.
+     */
+    @Override
+    public LoadReport heartbeat() {
+        return LoadReport.current(0, EXECUTIONS.size());
+    }
+
+    private Execution start(JobToken token) throws ServiceException {
+
+        final Execution execution = new Execution(Thread.currentThread());
+        EXECUTIONS.put(token.getId(), execution);
+        if (TOMBSTONES.contains(token.getId())) {
+            // Cancelled before the start. Not interrupted, since the thread is the current one.
+            execution.cancelled = true;
+        }
+        try {
+            ensureRunnable(token, execution);
+        } catch (ServiceException e) {
+            finish(token, execution);
+            throw e;
+        }
+
+        if (token.getDeadline() > 0) {
+            execution.expiry = DEADLINE_SCHEDULER.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    execution.cancel();
+                }
+            }, token.getRemainingMsec(), TimeUnit.MILLISECONDS);
+        }
+        return execution;
+    }
+
+    private void ensureRunnable(JobToken token, Execution execution) throws ServiceException {
+        if (token.isExpired()) {
+            throw new ServiceException("The job has been expired.", new TimeoutException(
+                    MessageFormat.format("The job did not complete in {0} msec.", String.valueOf(token.getTimeoutMsec()))));
+        }
+        if (execution.cancelled) {
+            throw new ServiceException("The job has been cancelled.", new CancellationException(token.toString()));
+        }
+    }
+
+    private void finish(JobToken token, Execution execution) {
+        EXECUTIONS.remove(token.getId(), execution);
+        execution.finish();
+    }
+
+    /**
+     * A job running on a thread of the service.
+     */
+    private static class Execution {
+
+        private final Thread thread;
+        private ScheduledFuture<?> expiry;
+        private volatile boolean cancelled;
+        private boolean finished;
+
+        Execution(Thread thread) {
+            this.thread = thread;
+        }
+
+        synchronized void cancel() {
+            if (finished) {
+                return;
+            }
+            cancelled = true;
+            thread.interrupt();
+        }
+
+        synchronized void finish() {
+            finished = true;
+            if (expiry != null) {
+                expiry.cancel(false);
+            }
+            // The thread goes back to the pool of the RPC runtime. Do not leave the interruption to the next job.
+            if (cancelled) {
+                Thread.interrupted();
+            }
+        }
+    }
 }
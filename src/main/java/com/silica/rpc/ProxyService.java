@@ -16,12 +16,24 @@
 package com.silica.rpc;
 
 import java.io.Serializable;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.silica.Config;
+import com.silica.Silica;
+import com.silica.job.Idempotent;
 import com.silica.job.Job;
+import com.silica.job.JobToken;
+import com.silica.rpc.server.Server;
 import com.silica.rpc.server.ServerSelector;
+import com.silica.rpc.server.ServerStatistics;
 import com.silica.service.Service;
 import com.silica.service.ServiceException;
 
@@ -32,12 +44,30 @@ public final class ProxyService extends AbstractRpcService {
     private static final long serialVersionUID = 2969871989070029618L;
 
     private final Class<? extends Service> clazz;
+    private final transient Server server;
+    private final transient ServerSelector selector;
 
     private long start;
 
     public ProxyService(Class<? extends Service> clazz) throws ServiceException {
+        this(clazz, null);
+    }
+
+    /**
+     * A proxy service which dispatches every job to the server instead of selecting one.
+     */
+    public ProxyService(Class<? extends Service> clazz, Server server) throws ServiceException {
+        this(clazz, server, null);
+    }
+
+    /**
+     * A proxy service which selects the servers from the selector, or from the default selector if it is null.
+     */
+    ProxyService(Class<? extends Service> clazz, Server server, ServerSelector selector) throws ServiceException {
 
         this.clazz = clazz;
+        this.server = server;
+        this.selector = selector;
 
         if (LOG.isDebugEnabled()) {
             this.start = System.nanoTime();
@@ -46,13 +76,263 @@ public final class ProxyService extends AbstractRpcService {
 
     @Override
     public <R extends Serializable> R execute(Job<R> job) throws ServiceException {
+        return execute(job, new JobToken(0L));
+    }
+
+    @Override
+    public <R extends Serializable> R execute(final Job<R> job, final JobToken token) throws ServiceException {
         LOG.info("Execute a job({}) through the proxy service.", job.getClass().getName());
 
-        R r = ServerSelector.createSelector().select(this).execute(clazz, job);
+        R r = invoke(token, job, 1, job instanceof Idempotent, new Dispatch<R>() {
+
+            @Override
+            public R to(Server target) throws ServiceException {
+                return target.execute(clazz, job, token);
+            }
+        });
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("Elapsed time: {} nano sec.", System.nanoTime() - start);
         }
         return r;
     }
+
+    @Override
+    public <R extends Serializable> List<R> executeBatch(final List<Job<R>> jobs, final JobToken token) throws ServiceException {
+        LOG.info("Execute {} jobs through the proxy service.", jobs.size());
+
+        boolean idempotent = true;
+        for (Job<R> job : jobs) {
+            idempotent &= job instanceof Idempotent;
+        }
+        List<R> r = invoke(token, null, jobs.size(), idempotent, new Dispatch<List<R>>() {
+
+            @Override
+            public List<R> to(Server target) throws ServiceException {
+                return target.executeBatch(clazz, jobs, token);
+            }
+        });
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Elapsed time: {} nano sec.", System.nanoTime() - start);
+        }
+        return r;
+    }
+
+    @Override
+    public void cancel(JobToken token) {
+        token.cancel();
+    }
+
+    /**
+     * Dispatch to a server, and retry on another server according to the {@link RetryPolicy} when the server fails.
+     * A proxy for a specific server does not retry. The jobs are counted in the statistics of the server while they
+     * are in flight.
+     */
+    private <T> T invoke(JobToken token, Job<?> job, int jobs, boolean idempotent, Dispatch<T> dispatch)
+            throws ServiceException {
+
+        RetryPolicy retryPolicy = RetryPolicy.fromConfig();
+        List<Server> failed = new ArrayList<Server>();
+        ServiceException failure = null;
+
+        for (int attempt = 1;; attempt++) {
+            Server target = dispatch(token, job, jobs, failed, failure);
+            try {
+                return send(target, jobs, retryPolicy, dispatch);
+
+            } catch (ServiceException e) {
+                if (server != null || attempt >= retryPolicy.getMaxAttempts() || token.isCancelled()
+                        || !retryPolicy.isRetryable(e, idempotent)) {
+                    throw e;
+                }
+                long backoff = retryPolicy.backoff(attempt);
+                if (token.getRemainingMsec() <= backoff) {
+                    throw e;
+                }
+                LOG.warn(MessageFormat.format("The server [{0}] failed. Retry on another server in {1} msec.",
+                        target.getServerContext().getPublicAddress(), String.valueOf(backoff)), e);
+                failed.add(target);
+                failure = e;
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Dispatch to the server, and record the latency or the failure of the server in its statistics. A failure of a
+     * job itself is not a failure of the server, and a cancelled job is not recorded. The permits of the server are
+     * given back when the jobs complete, and the server is taken as overloaded only when the jobs time out or are
+     * rejected. A failure to connect is left to the circuit breaker.
+     */
+    private <T> T send(Server target, int jobs, RetryPolicy retryPolicy, Dispatch<T> dispatch) throws ServiceException {
+        ServerStatistics statistics = target.getStatistics();
+        statistics.begin(jobs);
+        long start = System.nanoTime();
+        boolean overloaded = false;
+        try {
+            T r = dispatch.to(target);
+            statistics.succeeded((System.nanoTime() - start) / jobs);
+            return r;
+
+        } catch (ServiceException e) {
+            if (retryPolicy.isRetryable(e, true)) {
+                statistics.failed();
+            } else if (!isCancelled(e)) {
+                statistics.succeeded((System.nanoTime() - start) / jobs);
+            }
+            overloaded = isOverloaded(e);
+            throw e;
+        } finally {
+            statistics.end(jobs);
+            statistics.getConcurrencyLimit().release(jobs, overloaded);
+        }
+    }
+
+    private static boolean isOverloaded(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TimeoutException || cause instanceof RejectedExecutionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isCancelled(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CancellationException || cause instanceof InterruptedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Server dispatch(JobToken token, Job<?> job, int jobs, List<Server> failed, ServiceException failure)
+            throws ServiceException {
+        if (token.isCancelled()) {
+            throw new ServiceException("The job has been cancelled.", new CancellationException(token.toString()));
+        }
+        Server target = acquire(token, job, jobs, select(job, failed, failure), failed);
+        token.dispatched(clazz, target);
+        return target;
+    }
+
+    /**
+     * Take permits for the jobs from the selected server. When the server is saturated, the jobs overflow to another
+     * server unless the policy is to wait. When every server is saturated, the jobs wait for the selected server
+     * unless the policy is to fail.
+     */
+    private Server acquire(JobToken token, Job<?> job, int jobs, Server target, List<Server> failed)
+            throws ServiceException {
+        if (target.getStatistics().getConcurrencyLimit().tryAcquire(jobs)) {
+            return target;
+        }
+        Saturation policy = Saturation.fromConfig();
+        if (policy != Saturation.WAIT && server == null) {
+            List<Server> saturated = new ArrayList<Server>(failed);
+            saturated.add(target);
+            for (;;) {
+                Server other;
+                try {
+                    other = getSelector().select(this, job, saturated);
+                } catch (IllegalStateException e) {
+                    break;
+                }
+                if (other.getStatistics().getConcurrencyLimit().tryAcquire(jobs)) {
+                    LOG.debug("The server [{}] is saturated. Overflow to [{}].",
+                            target.getServerContext().getPublicAddress(), other.getServerContext().getPublicAddress());
+                    return other;
+                }
+                saturated.add(other);
+            }
+        }
+        if (policy == Saturation.FAIL) {
+            throw new ServiceException("The servers are saturated.", new RejectedExecutionException(token.toString()));
+        }
+        try {
+            // Wait without a timeout for a job without a deadline.
+            long timeout = token.getDeadline() > 0 ? Math.max(token.getRemainingMsec(), 1L) : 0L;
+            if (!target.getStatistics().getConcurrencyLimit().acquire(jobs, timeout)) {
+                throw new ServiceException("The servers are saturated.", new TimeoutException(
+                        MessageFormat.format("The job did not complete in {0} msec.", String.valueOf(token.getTimeoutMsec()))));
+            }
+            return target;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("The job has been cancelled.", e);
+        }
+    }
+
+    private Server select(Job<?> job, List<Server> failed, ServiceException failure) throws ServiceException {
+        if (server != null) {
+            return server;
+        }
+        if (failed.isEmpty()) {
+            return getSelector().select(this, job);
+        }
+        try {
+            return getSelector().select(this, job, failed);
+        } catch (IllegalStateException e) {
+            throw new ServiceException("There is no other server to retry the job.", failure);
+        }
+    }
+
+    private ServerSelector getSelector() {
+        return selector != null ? selector : ServerSelector.createSelector();
+    }
+
+    /**
+     * What to do with the jobs for a saturated server.
+     */
+    private static enum Saturation {
+        WAIT, OVERFLOW, FAIL;
+
+        /*
+         * The policy of the last configured value. The value is parsed again only when it has changed, e.g. on a boot.
+         */
+        private static volatile Parsed parsed = new Parsed(null, OVERFLOW);
+
+        static Saturation fromConfig() {
+            String value = Silica.getGlobalConfig(Config.KEY_SERVER_SATURATION_POLICY);
+            Parsed p = parsed;
+            if (value == null ? p.value != null : !value.equals(p.value)) {
+                p = parsed = new Parsed(value, parse(value));
+            }
+            return p.policy;
+        }
+
+        private static Saturation parse(String value) {
+            if (value == null || value.trim().length() == 0) {
+                return OVERFLOW;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Unknown {} [{}]. Overflow to another server.", Config.KEY_SERVER_SATURATION_POLICY, value);
+                return OVERFLOW;
+            }
+        }
+    }
+
+    private static final class Parsed {
+
+        private final String value;
+        private final Saturation policy;
+
+        Parsed(String value, Saturation policy) {
+            this.value = value;
+            this.policy = policy;
+        }
+    }
+
+    private interface Dispatch<T> {
+
+        T to(Server target) throws ServiceException;
+    }
 }
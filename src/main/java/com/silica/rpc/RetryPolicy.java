@@ -0,0 +1,129 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc;
+
+import java.io.EOFException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.rmi.ConnectIOException;
+import java.rmi.MarshalException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.UnmarshalException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+import com.silica.Config;
+import com.silica.Silica;
+import com.silica.job.JobException;
+import com.silica.rpc.server.ServerException;
+
+/**
+ * <p>A policy to retry a job on another server when a server fails.</p>
+ * The delay before each retry grows exponentially with a random jitter, up to the max backoff.
+ */
+public class RetryPolicy {
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_BACKOFF_MSEC = 100L;
+    private static final long DEFAULT_MAX_BACKOFF_MSEC = 2000L;
+
+    private final int maxAttempts;
+    private final long backoffMsec;
+    private final long maxBackoffMsec;
+
+    public RetryPolicy(int maxAttempts, long backoffMsec, long maxBackoffMsec) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMsec = backoffMsec;
+        this.maxBackoffMsec = maxBackoffMsec;
+    }
+
+    /**
+     * A policy defined by the global configuration.
+     */
+    public static RetryPolicy fromConfig() {
+        return new RetryPolicy(
+                (int) getLong(Config.KEY_JOB_RETRY_MAX_ATTEMPTS, DEFAULT_MAX_ATTEMPTS),
+                getLong(Config.KEY_JOB_RETRY_BACKOFF_MSEC, DEFAULT_BACKOFF_MSEC),
+                getLong(Config.KEY_JOB_RETRY_BACKOFF_MAX_MSEC, DEFAULT_MAX_BACKOFF_MSEC));
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        String value = Silica.getGlobalConfig(key);
+        if (value == null || value.length() == 0) {
+            return defaultValue;
+        }
+        return Long.parseLong(value);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * A delay before the next attempt.
+     * 
+     * @param attempt
+     *            a number of the attempts which have failed
+     * @return the delay in milli seconds
+     */
+    public long backoff(int attempt) {
+        int shift = Math.min(attempt - 1, 30);
+        long ceiling = backoffMsec << shift;
+        if ((ceiling >> shift) != backoffMsec || ceiling > maxBackoffMsec) {
+            // Overflowed, or over the max.
+            ceiling = maxBackoffMsec;
+        }
+        return ceiling <= 0 ? 0L : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Whether the failure is a failure of the server rather than of the job.
+     * <p>
+     * A failure to connect means that the job has not reached the server, so any job can be retried. A broken
+     * connection may happen after the job has started, so only an idempotent job is retried on it.
+     * </p>
+     */
+    public boolean isRetryable(Throwable e, boolean idempotent) {
+        boolean remote = false;
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JobException
+                    || cause instanceof CancellationException
+                    || cause instanceof TimeoutException
+                    || cause instanceof InterruptedException) {
+                return false;
+            }
+            if (cause instanceof java.rmi.ConnectException
+                    || cause instanceof ConnectIOException
+                    || cause instanceof NoSuchObjectException
+                    || cause instanceof NotBoundException
+                    || cause instanceof java.rmi.UnknownHostException
+                    || cause instanceof java.net.ConnectException
+                    || cause instanceof UnknownHostException
+                    || cause instanceof ServerException) {
+                return true;
+            }
+            if (cause instanceof MarshalException
+                    || cause instanceof UnmarshalException
+                    || cause instanceof SocketException
+                    || cause instanceof EOFException) {
+                remote = true;
+            }
+        }
+        return idempotent && remote;
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.pipe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A gzip compressed tar archive, written in the ustar format that <code>tar xzpf -</code> unpacks. The directories of
+ * the entries are made by tar.
+ */
+class Archive implements Closeable {
+
+    private static final byte[] MAGIC = { 'u', 's', 't', 'a', 'r', 0, '0', '0' };
+    private static final int BLOCK = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final int PREFIX_LENGTH = 155;
+
+    private final OutputStream out;
+    private final byte[] buf = new byte[8192];
+
+    Archive(OutputStream out) throws IOException {
+        this.out = new GZIPOutputStream(out, 8192);
+    }
+
+    /**
+     * Add a file to the archive.
+     * 
+     * @param name
+     *            the path in the archive, separated by '/'
+     * @param mode
+     *            the permission, such as 0644
+     */
+    void add(String name, int mode, long size, long lastModified, InputStream data) throws IOException {
+
+        out.write(header(name, mode, size, lastModified));
+
+        long rest = size;
+        int len;
+        while (rest > 0 && (len = data.read(buf, 0, (int) Math.min(buf.length, rest))) >= 0) {
+            out.write(buf, 0, len);
+            rest -= len;
+        }
+        if (rest > 0) {
+            throw new IOException("The file has been shortened while archiving: " + name);
+        }
+        int padding = (int) ((BLOCK - size % BLOCK) % BLOCK);
+        out.write(new byte[padding]);
+    }
+
+    /**
+     * Write the end of the archive, and close the stream.
+     */
+    @Override
+    public void close() throws IOException {
+        out.write(new byte[BLOCK * 2]);
+        out.close();
+    }
+
+    static byte[] header(String name, int mode, long size, long lastModified) throws IOException {
+
+        byte[] header = new byte[BLOCK];
+
+        byte[] path = name.replace('\\', '/').getBytes(StandardCharsets.UTF_8);
+        int split = 0;
+        if (path.length > NAME_LENGTH) {
+            // Move the leading directories to the prefix field.
+            for (split = path.length - NAME_LENGTH - 1; split < path.length && path[split] != '/'; split++) {
+            }
+            if (split >= path.length || split > PREFIX_LENGTH) {
+                throw new IOException("The path is too long to archive: " + name);
+            }
+            System.arraycopy(path, 0, header, 345, split);
+            split++;
+        }
+        System.arraycopy(path, split, header, 0, path.length - split);
+
+        octal(header, 100, 8, mode & 07777);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, lastModified / 1000);
+        header[156] = '0';
+        System.arraycopy(MAGIC, 0, header, 257, MAGIC.length);
+
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        octal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /**
+     * Write the number in octal digits, terminated by NUL.
+     */
+    private static void octal(byte[] header, int offset, int length, long value) throws IOException {
+        String digits = Long.toOctalString(value);
+        if (digits.length() > length - 1) {
+            throw new IOException("The value is too large to archive: " + value);
+        }
+        int pad = length - 1 - digits.length();
+        Arrays.fill(header, offset, offset + pad, (byte) '0');
+        System.arraycopy(digits.getBytes(StandardCharsets.US_ASCII), 0, header, offset + pad, digits.length());
+        header[offset + length - 1] = 0;
+    }
+}
@@ -0,0 +1,361 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.pipe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>A delta transfer of a file in the way of rsync, against a previous copy of the file on the server.</p>
+ * The server sends the checksums of the blocks of the previous copy. The client finds the blocks in the new file by a
+ * rolling checksum, and sends only the data which is not in the previous copy. The server rebuilds the new file from
+ * the blocks and the data.
+ * <p>
+ * The server side runs by {@link #main(String[])} on the server, so this class depends on nothing but the JDK.
+ * </p>
+ */
+public final class Delta {
+
+    private static final int MAGIC = 0x53444c31;
+    private static final int MIN_BLOCK_SIZE = 2048;
+    private static final int MAX_BLOCK_SIZE = 65536;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final byte END = 0;
+    private static final byte COPY = 1;
+    private static final byte LITERAL = 2;
+
+    private Delta() {
+    }
+
+    /**
+     * A size of the blocks for a file, about the square root of the length of the file.
+     */
+    public static int blockSize(long length) {
+        int size = Integer.highestOneBit((int) Math.min(Math.sqrt(length), MAX_BLOCK_SIZE));
+        return Math.max(size, MIN_BLOCK_SIZE);
+    }
+
+    /**
+     * Write the checksums of the blocks of the previous copy.
+     */
+    public static void signature(File basis, OutputStream out) throws IOException {
+
+        long length = basis.length();
+        int blockSize = blockSize(length);
+        int count = (int) (length / blockSize);
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(blockSize);
+        data.writeInt(count);
+
+        MessageDigest md5 = md5();
+        byte[] block = new byte[blockSize];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(basis)))) {
+            for (int i = 0; i < count; i++) {
+                in.readFully(block);
+                data.writeInt(weak(block, 0, blockSize));
+                data.write(md5.digest(block));
+            }
+        }
+        data.flush();
+    }
+
+    public static Signature readSignature(InputStream in) throws IOException {
+
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a signature.");
+        }
+        int blockSize = data.readInt();
+        int count = data.readInt();
+        int[] weak = new int[count];
+        byte[][] strong = new byte[count][16];
+        for (int i = 0; i < count; i++) {
+            weak[i] = data.readInt();
+            data.readFully(strong[i]);
+        }
+        return new Signature(blockSize, weak, strong);
+    }
+
+    /**
+     * Write the instructions to rebuild the data from the previous copy of the signature. The data is read through a
+     * buffer, so a file of any size is matched in a bounded memory.
+     */
+    public static void delta(Signature signature, InputStream in, OutputStream out) throws IOException {
+
+        int blockSize = signature.blockSize;
+
+        DataOutputStream delta = new DataOutputStream(out);
+        delta.writeInt(MAGIC);
+        delta.writeInt(blockSize);
+
+        MessageDigest md5 = md5();
+        MessageDigest digest = md5();
+        byte[] buf = new byte[Math.max(blockSize * 4, BUFFER_SIZE)];
+        int end = fill(in, buf, 0, digest);
+        boolean eof = end < buf.length;
+        int literalStart = 0;
+        int i = 0;
+
+        if (signature.weak.length > 0) {
+            int a = 0;
+            int b = 0;
+            boolean rolling = false;
+            for (;;) {
+                if (i + blockSize > end) {
+                    // The window is out of the buffer. Keep the byte before the window to roll the checksum.
+                    if (eof) {
+                        break;
+                    }
+                    int keep = rolling ? i - 1 : i;
+                    writeLiteral(delta, buf, literalStart, keep);
+                    System.arraycopy(buf, keep, buf, 0, end - keep);
+                    end -= keep;
+                    i -= keep;
+                    literalStart = 0;
+                    end += fill(in, buf, end, digest);
+                    eof = end < buf.length;
+                    continue;
+                }
+                if (!rolling) {
+                    a = 0;
+                    b = 0;
+                    for (int k = 0; k < blockSize; k++) {
+                        a += buf[i + k] & 0xff;
+                        b += (blockSize - k) * (buf[i + k] & 0xff);
+                    }
+                } else {
+                    int out0 = buf[i - 1] & 0xff;
+                    int in0 = buf[i - 1 + blockSize] & 0xff;
+                    a += in0 - out0;
+                    b += a - blockSize * out0;
+                }
+                int match = signature.find((a & 0xffff) | (b << 16), buf, i, md5);
+                if (match >= 0) {
+                    writeLiteral(delta, buf, literalStart, i);
+                    delta.writeByte(COPY);
+                    delta.writeInt(match);
+                    i += blockSize;
+                    literalStart = i;
+                    rolling = false;
+                    continue;
+                }
+                rolling = true;
+                i++;
+            }
+        }
+        writeLiteral(delta, buf, literalStart, end);
+        while (!eof) {
+            end = fill(in, buf, 0, digest);
+            eof = end < buf.length;
+            writeLiteral(delta, buf, 0, end);
+        }
+
+        delta.writeByte(END);
+        delta.write(digest.digest());
+        delta.flush();
+    }
+
+    /**
+     * Read the data into the buffer from the offset until the buffer is full or the end of the data.
+     * 
+     * @return the number of the bytes read
+     */
+    private static int fill(InputStream in, byte[] buf, int off, MessageDigest digest) throws IOException {
+        int n = off;
+        int len;
+        while (n < buf.length && (len = in.read(buf, n, buf.length - n)) >= 0) {
+            n += len;
+        }
+        digest.update(buf, off, n - off);
+        return n - off;
+    }
+
+    private static void writeLiteral(DataOutputStream delta, byte[] data, int from, int to) throws IOException {
+        if (from < to) {
+            delta.writeByte(LITERAL);
+            delta.writeInt(to - from);
+            delta.write(data, from, to - from);
+        }
+    }
+
+    /**
+     * Rebuild the file from the previous copy and the delta. The file is replaced only if the digest of the rebuilt
+     * data matches the one of the delta. The previous copy may be the file itself.
+     */
+    public static void patch(File basis, InputStream in, File dest) throws IOException {
+
+        File tmp = new File(dest.getPath() + ".tmp");
+        MessageDigest md5 = md5();
+        boolean done = false;
+        try (RandomAccessFile base = new RandomAccessFile(basis, "r");
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+
+            DataInputStream delta = new DataInputStream(new BufferedInputStream(in));
+            if (delta.readInt() != MAGIC) {
+                throw new IOException("Not a delta.");
+            }
+            int blockSize = delta.readInt();
+            byte[] block = new byte[blockSize];
+            for (;;) {
+                byte op = delta.readByte();
+                if (op == COPY) {
+                    base.seek((long) delta.readInt() * blockSize);
+                    base.readFully(block);
+                    md5.update(block);
+                    out.write(block);
+
+                } else if (op == LITERAL) {
+                    byte[] literal = new byte[delta.readInt()];
+                    delta.readFully(literal);
+                    md5.update(literal);
+                    out.write(literal);
+
+                } else if (op == END) {
+                    byte[] expected = new byte[16];
+                    delta.readFully(expected);
+                    if (!Arrays.equals(expected, md5.digest())) {
+                        throw new IOException("The rebuilt file does not match: " + dest);
+                    }
+                    break;
+                } else {
+                    throw new IOException("Unknown instruction: " + op);
+                }
+            }
+            done = true;
+        } finally {
+            if (!done) {
+                tmp.delete();
+            }
+        }
+        Files.move(tmp.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static int weak(byte[] block, int off, int len) {
+        int a = 0;
+        int b = 0;
+        for (int k = 0; k < len; k++) {
+            a += block[off + k] & 0xff;
+            b += (len - k) * (block[off + k] & 0xff);
+        }
+        return (a & 0xffff) | (b << 16);
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The checksums of the blocks of a previous copy.
+     */
+    public static final class Signature {
+
+        private final int blockSize;
+        private final int[] weak;
+        private final byte[][] strong;
+        private final Map<Integer, int[]> blocks = new HashMap<Integer, int[]>();
+
+        Signature(int blockSize, int[] weak, byte[][] strong) {
+            this.blockSize = blockSize;
+            this.weak = weak;
+            this.strong = strong;
+            for (int i = 0; i < weak.length; i++) {
+                int[] indexes = blocks.get(weak[i]);
+                if (indexes == null) {
+                    blocks.put(weak[i], new int[] { i });
+                } else {
+                    int[] grown = Arrays.copyOf(indexes, indexes.length + 1);
+                    grown[indexes.length] = i;
+                    blocks.put(weak[i], grown);
+                }
+            }
+        }
+
+        /**
+         * @return an index of the block which has the data at the offset, or -1 if none
+         */
+        int find(int checksum, byte[] data, int offset, MessageDigest md5) {
+            int[] indexes = blocks.get(checksum);
+            if (indexes == null) {
+                return -1;
+            }
+            md5.update(data, offset, blockSize);
+            byte[] digest = md5.digest();
+            for (int index : indexes) {
+                if (Arrays.equals(strong[index], digest)) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        public int getBlockSize() {
+            return blockSize;
+        }
+    }
+
+    /**
+     * The server side of the delta transfer.
+     * 
+     * <pre>
+     * signature &lt;previous copy&gt;                  write the signature to the standard output
+     * patch &lt;previous copy&gt; &lt;delta&gt; &lt;dest&gt;     rebuild the file, and delete the delta
+     * </pre>
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length == 2 && args[0].equals("signature")) {
+
+            OutputStream out = new BufferedOutputStream(System.out);
+            signature(new File(args[1]), out);
+            out.flush();
+
+        } else if (args.length == 4 && args[0].equals("patch")) {
+
+            File delta = new File(args[2]);
+            try (InputStream in = new FileInputStream(delta)) {
+                patch(new File(args[1]), in, new File(args[3]));
+            } finally {
+                delta.delete();
+            }
+        } else {
+            System.err.println("Usage: Delta signature <previous copy> | patch <previous copy> <delta> <dest>");
+            System.exit(2);
+        }
+    }
+}
@@ -15,18 +15,47 @@
  */
 package com.silica.rpc.pipe;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Paths;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.ChannelSftp.LsEntry;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+import com.silica.Config;
+import com.silica.Silica;
 import com.silica.resource.Resource;
 import com.silica.rpc.server.SecurePipedServer;
 import com.silica.rpc.server.Server;
@@ -36,6 +65,26 @@ public class SecurePipe extends Pipe {
 
     private static final Logger LOG = LoggerFactory.getLogger(SecurePipe.class);
 
+    /*
+     * The same as the default of silica.properties.
+     */
+    private static final int DEFAULT_PARALLELISM = 4;
+
+    /*
+     * The marker of a resource directory which no put is writing. Only such a directory runs a delta.
+     */
+    static final String COMPLETE = ".complete";
+
+    private static final ExecutorService UPLOADERS = Executors.newCachedThreadPool(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "silica-upload");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     private Server server;
     private Session session;
     private ChannelSftp channelSftp;
@@ -99,24 +148,141 @@ public class SecurePipe extends Pipe {
         }
     }
 
+    /**
+     * Put the resources over the SFTP channels of the session, as many as <code>clone.parallelism</code> at once, or
+     * as one archive if <code>clone.mode</code> is <code>archive</code>. The destination is marked as
+     * {@link #COMPLETE} only after all the resources have been put.
+     */
     @Override
-    public void put(String dest, Resource... resources) throws PipeException {
+    public void put(String dest, final Resource... resources) throws PipeException {
         ensureConnect();
 
-        for (Resource resource : resources) {
+        try {
+            String complete = Paths.get(dest, COMPLETE).toString();
+            ChannelSftp sftp = useSftpChannel();
+            try {
+                sftp.rm(complete);
+            } catch (SftpException e) {
+                // Not marked yet.
+            }
+            if (isArchiveMode()) {
+
+                putArchive(dest, resources);
 
+            } else {
+
+                putFiles(dest, resources);
+            }
+            sftp.put(new ByteArrayInputStream(new byte[0]), complete);
+
+        } catch (JSchException e) {
+
+            throw new PipeException("Could not open the SFTP channel.", e);
+        } catch (SftpException e) {
+
+            throw new PipeException(MessageFormat.format("Could not mark the resources in [{0}] as complete.", dest), e);
+        } finally {
+            for (Resource resource : resources) {
+                resource.close();
+            }
+        }
+    }
+
+    /**
+     * Put the resources as files, which are taken by the uploaders one by one.
+     */
+    private void putFiles(String dest, final Resource[] resources) throws PipeException, JSchException {
+
+        final String[] destpaths = new String[resources.length];
+        Set<String> destdirs = new LinkedHashSet<String>();
+        for (int i = 0; i < resources.length; i++) {
+            destpaths[i] = Paths.get(dest, resources[i].getName()).toString();
+
+            int sp = 0;
+            sp = (sp = destpaths[i].lastIndexOf('/')) > 0 ? sp : destpaths[i].lastIndexOf('\\');
+            destdirs.add(destpaths[i].substring(0, sp));
+        }
+        if (!destdirs.isEmpty()) {
+            StringBuilder mkdir = new StringBuilder("mkdir -p");
+            for (String destdir : destdirs) {
+                mkdir.append(' ').append(destdir);
+            }
+            execute(mkdir.toString());
+        }
+
+        final Transfer transfer = new Transfer(resources.length);
+        int uploaders = Math.min(getParallelism(), resources.length);
+        if (uploaders <= 1) {
+
+            upload(useSftpChannel(), resources, destpaths, transfer);
+
+        } else {
+
+            upload(uploaders, transfer, new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    ChannelSftp sftp = (ChannelSftp) session.openChannel("sftp");
+                    try {
+                        sftp.connect(connectionTimeout);
+                        upload(sftp, resources, destpaths, transfer);
+                    } finally {
+                        sftp.disconnect();
+                    }
+                    return null;
+                }
+            });
+        }
+        transfer.report(server.getServerContext().getPublicAddress(), uploaders);
+    }
+
+    /**
+     * Run the uploaders at once until all the resources are taken. The first failure stops the other uploaders from
+     * taking more resources, and is thrown when all of them have stopped.
+     */
+    static void upload(int uploaders, Transfer transfer, Callable<Void> uploader) throws PipeException {
+
+        CompletionService<Void> running = new ExecutorCompletionService<Void>(UPLOADERS);
+        for (int i = 0; i < uploaders; i++) {
+            running.submit(uploader);
+        }
+        PipeException failure = null;
+        for (int i = 0; i < uploaders; i++) {
             try {
+                running.take().get();
+            } catch (ExecutionException e) {
+                transfer.abort();
+                if (failure == null) {
+                    failure = e.getCause() instanceof PipeException ? (PipeException) e.getCause()
+                            : new PipeException("Could not put the resources.", e);
+                }
+            } catch (InterruptedException e) {
+                transfer.abort();
+                Thread.currentThread().interrupt();
+                throw new PipeException("Interrupted while putting the resources.", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
 
-                String destpath = Paths.get(dest, resource.getName()).toString();
+    /**
+     * Put the resources one by one until all of them are taken.
+     */
+    private void upload(ChannelSftp sftp, Resource[] resources, String[] destpaths, Transfer transfer)
+            throws PipeException {
 
-                int sp = 0;
-                sp = (sp = destpath.lastIndexOf('/')) > 0 ? sp : destpath.lastIndexOf('\\');
-                String destdir = destpath.substring(0, sp);
-                execute("mkdir -p " + destdir);
+        int i;
+        while ((i = transfer.next()) >= 0) {
+            Resource resource = resources[i];
+            try {
 
-                ChannelSftp sftp = useSftpChannel();
-                sftp.put(resource.getData(), destpath);
-                sftp.chmod(resource.getpermissions(), destpath);
+                if (!isDeltaTarget(resource) || !putDelta(sftp, resource, destpaths[i])) {
+                    sftp.put(resource.getData(), destpaths[i]);
+                }
+                sftp.chmod(resource.getpermissions(), destpaths[i]);
+                transfer.done(new File(resource.getPath()).length(), destpaths[i]);
 
             } catch (Exception e) {
 
@@ -127,6 +293,299 @@ public class SecurePipe extends Pipe {
         }
     }
 
+    /**
+     * Stream the resources as one {@link Archive} to tar on the server, which makes the directories and keeps the
+     * permissions.
+     */
+    private void putArchive(String dest, Resource[] resources) throws PipeException, JSchException {
+
+        Transfer transfer = new Transfer(resources.length);
+        String command = "mkdir -p " + dest + " && tar xzpf - -C " + dest;
+
+        ChannelExec exec = (ChannelExec) session.openChannel("exec");
+        try {
+            exec.setCommand(command);
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            exec.setErrStream(err);
+            OutputStream out = exec.getOutputStream();
+            exec.connect(connectionTimeout);
+
+            // The archive is closed only when complete: on a failure, the channel is disconnected without the end of
+            // the archive, so that tar fails rather than unpacks a part of the resources.
+            Archive archive = new Archive(new BufferedOutputStream(out, 65536));
+            for (Resource resource : resources) {
+                File file = new File(resource.getPath());
+                archive.add(resource.getName(), resource.getpermissions(), file.length(), file.lastModified(),
+                        resource.getData());
+                resource.close();
+                transfer.done(file.length(), Paths.get(dest, resource.getName()).toString());
+            }
+            archive.close();
+
+            long deadline = System.currentTimeMillis() + server.getServerContext().getSshTimeout();
+            while (!exec.isClosed()) {
+                checkDeadline(deadline, command);
+                Thread.sleep(retryInterval);
+            }
+            if (exec.getExitStatus() != 0) {
+                throw new PipeException(MessageFormat.format("Could not unpack the resources to [{0}]: {1}", dest,
+                        err.toString().trim()));
+            }
+            transfer.report(server.getServerContext().getPublicAddress(), 1);
+
+        } catch (IOException e) {
+
+            throw new PipeException(MessageFormat.format("Could not put the resources to [{0}].", dest), e);
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new PipeException("Interrupted while putting the resources.", e);
+        } finally {
+            exec.disconnect();
+        }
+    }
+
+    private static boolean isArchiveMode() {
+        return "archive".equalsIgnoreCase(Silica.getGlobalConfig(Config.KEY_CLONE_MODE));
+    }
+
+    private static int getParallelism() {
+        String parallelism = Silica.getGlobalConfig(Config.KEY_CLONE_PARALLELISM);
+        return parallelism == null || parallelism.length() == 0 ? DEFAULT_PARALLELISM
+                : Math.max(Integer.parseInt(parallelism), 1);
+    }
+
+    /**
+     * The progress of putting resources.
+     */
+    static class Transfer {
+
+        private final int total;
+        private final long start = System.currentTimeMillis();
+        private final AtomicInteger taken = new AtomicInteger();
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+        private volatile boolean aborted;
+
+        Transfer(int total) {
+            this.total = total;
+        }
+
+        /**
+         * @return the index of the next resource to put, or -1 if no more
+         */
+        int next() {
+            if (aborted) {
+                return -1;
+            }
+            int i = taken.getAndIncrement();
+            return i < total ? i : -1;
+        }
+
+        void done(long size, String destpath) {
+            long sum = bytes.addAndGet(size);
+            int count = done.incrementAndGet();
+            LOG.debug("[{}/{}] Put {} ({} bytes, {} bytes in total).", count, total, destpath, size, sum);
+        }
+
+        void abort() {
+            aborted = true;
+        }
+
+        int getDone() {
+            return done.get();
+        }
+
+        void report(String address, int uploaders) {
+            long elapsed = Math.max(System.currentTimeMillis() - start, 1L);
+            LOG.info(MessageFormat.format("Put {0} files ({1} bytes) to [{2}] in {3} msec, {4} KB/s over {5} channels.",
+                    String.valueOf(done.get()), String.valueOf(bytes.get()), address, String.valueOf(elapsed),
+                    String.valueOf(bytes.get() * 1000 / 1024 / elapsed), String.valueOf(Math.max(uploaders, 1))));
+        }
+    }
+
+    private static boolean isDeltaTarget(Resource resource) {
+        if (!Boolean.parseBoolean(Silica.getGlobalConfig(Config.KEY_CLONE_DELTA))) {
+            return false;
+        }
+        String min = Silica.getGlobalConfig(Config.KEY_CLONE_DELTA_MIN_BYTES);
+        return new File(resource.getPath()).length() >= (min == null || min.length() == 0 ? 0L : Long.parseLong(min));
+    }
+
+    /**
+     * Put the resource as a {@link Delta} against the previous copy on the server: the copy in the destination, or
+     * the one in the newest older resource directory. The delta runs on the classes of the newest older resource
+     * directory which is {@link #COMPLETE}, never on the destination, whose classes may be being put.
+     * 
+     * @return true if the resource has been put, or false if it has to be put in full
+     */
+    private boolean putDelta(ChannelSftp sftp, Resource resource, String destpath) {
+
+        try {
+            boolean inPlace = exists(sftp, destpath);
+            String basisDir = findBasisDirectory(sftp, inPlace ? null : resource.getName());
+            if (basisDir == null) {
+                LOG.debug("There is no complete previous copy of {}.", resource.getName());
+                return false;
+            }
+            String basis = inPlace ? destpath : basisDir + resource.getName();
+
+            // Run the classes of the previous copy, which the server has for sure.
+            ServerContext context = server.getServerContext();
+            String javaHome = context.getJavaHome();
+            String java = (javaHome == null || javaHome.length() == 0 ? "" : javaHome + "/bin/") + "java -cp "
+                    + context.getClassPathString().replace(context.getResourceDirectory(), basisDir) + " "
+                    + Delta.class.getName();
+
+            ByteArrayOutputStream signature = new ByteArrayOutputStream();
+            if (run(java + " signature " + basis, signature) != 0) {
+                return false;
+            }
+            File file = new File(resource.getPath());
+            File delta = File.createTempFile("silica", ".delta");
+            try {
+                try (InputStream in = new FileInputStream(file);
+                        OutputStream out = new BufferedOutputStream(new FileOutputStream(delta))) {
+                    Delta.delta(Delta.readSignature(new ByteArrayInputStream(signature.toByteArray())), in, out);
+                }
+                if (delta.length() >= file.length()) {
+                    return false;
+                }
+                if (!patch(sftp, java + " patch " + basis, delta, destpath)) {
+                    return false;
+                }
+                LOG.info("Put {} as a delta of {} bytes instead of {} bytes.", resource.getName(), delta.length(),
+                        file.length());
+                return true;
+            } finally {
+                delta.delete();
+            }
+        } catch (Exception e) {
+            LOG.warn(MessageFormat.format("Could not put the resource as a delta: {0}", resource.getName()), e);
+            return false;
+        }
+    }
+
+    /**
+     * Put the delta next to the destination and rebuild the destination on the server. The delta is removed by the
+     * patch command, or here if the command has failed to run.
+     */
+    private boolean patch(ChannelSftp sftp, String command, File delta, String destpath) throws Exception {
+
+        String deltapath = destpath + ".delta";
+        boolean patched = false;
+        try {
+            sftp.put(delta.getPath(), deltapath);
+            patched = run(command + " " + deltapath + " " + destpath, null) == 0;
+            return patched;
+        } finally {
+            if (!patched) {
+                try {
+                    sftp.rm(deltapath);
+                } catch (SftpException e) {
+                    // Not put, or already removed by the patch command.
+                }
+            }
+        }
+    }
+
+    /**
+     * @param name
+     *            the name of the previous copy, or null if any
+     * @return the older resource directory which has the previous copy, or null if none
+     */
+    private String findBasisDirectory(final ChannelSftp sftp, String name) throws SftpException {
+
+        String root = server.getServerContext().getBasedir() + ".res/";
+        List<String> ids = new ArrayList<String>();
+        for (Object entry : (Vector<?>) sftp.ls(root)) {
+            ids.add(((LsEntry) entry).getFilename());
+        }
+        return findBasisDirectory(root, ids, Silica.getResourceID(), name, new Predicate<String>() {
+
+            @Override
+            public boolean test(String path) {
+                return exists(sftp, path);
+            }
+        });
+    }
+
+    /**
+     * @param current
+     *            the id of the destination, which is never the basis
+     * @return the directory of the newest id which is {@link #COMPLETE} and has the file of the name, or null if none
+     */
+    static String findBasisDirectory(String root, List<String> ids, String current, String name,
+            Predicate<String> exists) {
+
+        List<String> older = new ArrayList<String>();
+        for (String id : ids) {
+            if (!id.startsWith(".") && !id.equals(current)) {
+                older.add(id);
+            }
+        }
+        // The resource ids are in order of the time.
+        Collections.sort(older, Collections.reverseOrder());
+        for (String id : older) {
+            String dir = root + id + "/";
+            if (exists.test(dir + COMPLETE) && (name == null || exists.test(dir + name))) {
+                return dir;
+            }
+        }
+        return null;
+    }
+
+    private static boolean exists(ChannelSftp sftp, String path) {
+        try {
+            sftp.stat(path);
+            return true;
+        } catch (SftpException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Run the command, and copy its standard output. The command is given up after the ssh timeout of the server.
+     * 
+     * @return the exit status of the command
+     */
+    private int run(String command, OutputStream out) throws JSchException, IOException, InterruptedException {
+
+        ChannelExec exec = (ChannelExec) session.openChannel("exec");
+        try {
+            exec.setCommand(command);
+            InputStream in = exec.getInputStream();
+            exec.connect(connectionTimeout);
+
+            long deadline = System.currentTimeMillis() + server.getServerContext().getSshTimeout();
+            byte[] buf = new byte[8192];
+            for (;;) {
+                if (in.available() > 0) {
+                    int len = in.read(buf);
+                    if (out != null && len > 0) {
+                        out.write(buf, 0, len);
+                    }
+                } else if (exec.isClosed()) {
+                    break;
+                } else {
+                    checkDeadline(deadline, command);
+                    Thread.sleep(retryInterval);
+                }
+            }
+            int exitStatus = exec.getExitStatus();
+            LOG.debug("Exit status: {} of {}", exitStatus, command);
+            return exitStatus;
+        } finally {
+            exec.disconnect();
+        }
+    }
+
+    private static void checkDeadline(long deadline, String command) throws IOException {
+        if (System.currentTimeMillis() > deadline) {
+            throw new IOException(MessageFormat.format("The command did not complete in time: {0}", command));
+        }
+    }
+
     @Override
     public boolean isConnected() {
         return session != null && session.isConnected();
@@ -0,0 +1,149 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import com.silica.Config;
+
+/**
+ * <p>A circuit breaker of a server.</p>
+ * The breaker opens after consecutive failures of the server, and the server is taken out of the rotation. After the
+ * open period, the breaker becomes half-open and the {@link HealthChecker} probes the server. The breaker closes on a
+ * success of the probe and opens again on a failure.
+ */
+public class CircuitBreaker {
+
+    public static enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final int DEFAULT_FAILURES = 3;
+    private static final long DEFAULT_OPEN_MSEC = 5000L;
+
+    private final int failureThreshold;
+    private final long openMsec;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private volatile Runnable listener;
+
+    /**
+     * @param failureThreshold
+     *            a number of the consecutive failures to open the breaker, or zero or less to never open it
+     * @param openMsec
+     *            a period to keep the breaker open before the probe
+     */
+    public CircuitBreaker(int failureThreshold, long openMsec) {
+        this.failureThreshold = failureThreshold;
+        this.openMsec = openMsec;
+    }
+
+    /**
+     * A breaker defined by the global configuration. It never opens without the health checker, which closes it.
+     */
+    public static CircuitBreaker fromConfig() {
+        if (ServerSelector.getGlobalLong(Config.KEY_HEALTH_CHECK_INTERVAL_MSEC, HealthChecker.DEFAULT_INTERVAL_MSEC) <= 0) {
+            return new CircuitBreaker(0, 0L);
+        }
+        return new CircuitBreaker(
+                (int) ServerSelector.getGlobalLong(Config.KEY_CIRCUIT_BREAKER_FAILURES, DEFAULT_FAILURES),
+                ServerSelector.getGlobalLong(Config.KEY_CIRCUIT_BREAKER_OPEN_MSEC, DEFAULT_OPEN_MSEC));
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return true if the server is in the rotation
+     */
+    public synchronized boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    public void succeeded() {
+        boolean changed;
+        synchronized (this) {
+            failures = 0;
+            changed = state != State.CLOSED;
+            state = State.CLOSED;
+        }
+        if (changed) {
+            fireChanged();
+        }
+    }
+
+    /**
+     * Close the breaker after the probe of an open or half-open breaker succeeded. A closed breaker keeps its
+     * consecutive failures, since the server may respond to a probe and still fail the jobs.
+     */
+    public void recovered() {
+        boolean changed;
+        synchronized (this) {
+            changed = state != State.CLOSED;
+            if (changed) {
+                failures = 0;
+                state = State.CLOSED;
+            }
+        }
+        if (changed) {
+            fireChanged();
+        }
+    }
+
+    public void failed() {
+        boolean changed = false;
+        synchronized (this) {
+            failures++;
+            if (state == State.HALF_OPEN
+                    || (state == State.CLOSED && failureThreshold > 0 && failures >= failureThreshold)) {
+                changed = state == State.CLOSED;
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+            }
+        }
+        if (changed) {
+            fireChanged();
+        }
+    }
+
+    /**
+     * Make the breaker half-open if the open period has passed.
+     * 
+     * @return true if the server should be probed
+     */
+    public synchronized boolean tryHalfOpen() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMsec) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Listen to the changes whether the server is in the rotation.
+     */
+    void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    private void fireChanged() {
+        Runnable l = listener;
+        if (l != null) {
+            l.run();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.silica.Config;
+import com.silica.Silica;
+
+/**
+ * <p>A limit of the jobs in flight on a server, so that a burst of jobs does not overload the server.</p>
+ * The limit is fixed, or adapts to the server by AIMD: it grows by about one for each round of jobs while it is in
+ * use, and is halved when a job times out or the server rejects it. A server which fails to connect is left to the
+ * circuit breaker.
+ * <p>
+ * The jobs wait on a lock rather than a monitor, so that a job on a virtual thread does not pin its carrier thread.
+ * </p>
+ */
+public class ConcurrencyLimit {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrencyLimit.class);
+
+    public static enum Mode {
+        FIXED, AIMD
+    }
+
+    private static final int MIN_LIMIT = 1;
+    private static final double BACKOFF_RATIO = 0.5;
+
+    private final int maxLimit;
+    private final Mode mode;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private double limit;
+    private int inUse;
+
+    /**
+     * @param maxLimit
+     *            a number of the jobs in flight, or zero or less for no limit
+     * @param mode
+     *            whether the limit adapts to the server up to the max limit
+     */
+    public ConcurrencyLimit(int maxLimit, Mode mode) {
+        this.maxLimit = maxLimit;
+        this.mode = mode;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * A limit defined by the configuration of the server.
+     */
+    public static ConcurrencyLimit fromConfig(ServerContext context) {
+        int maxLimit = context == null ? 0 : context.getMaxInFlight();
+        return new ConcurrencyLimit(maxLimit, parseMode(Silica.getGlobalConfig(Config.KEY_SERVER_MAX_IN_FLIGHT_MODE)));
+    }
+
+    private static Mode parseMode(String mode) {
+        if (mode == null || mode.trim().length() == 0) {
+            return Mode.FIXED;
+        }
+        try {
+            return Mode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Unknown {} [{}]. Use a fixed limit.", Config.KEY_SERVER_MAX_IN_FLIGHT_MODE, mode);
+            return Mode.FIXED;
+        }
+    }
+
+    public boolean isLimited() {
+        return maxLimit > 0;
+    }
+
+    /**
+     * Take permits for the jobs if the limit allows. A server without jobs in flight always takes them, so that a
+     * batch larger than the limit is not rejected forever.
+     * 
+     * @return true if the permits have been taken
+     */
+    public boolean tryAcquire(int jobs) {
+        if (!isLimited()) {
+            return true;
+        }
+        lock.lock();
+        try {
+            if (inUse > 0 && inUse + jobs > (int) limit) {
+                return false;
+            }
+            inUse += jobs;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take permits for the jobs, waiting for the other jobs to complete.
+     * 
+     * @param timeoutMsec
+     *            a time to wait, or zero or less to wait without a timeout
+     * @return true if the permits have been taken, or false on the timeout
+     */
+    public boolean acquire(int jobs, long timeoutMsec) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMsec);
+        lock.lockInterruptibly();
+        try {
+            while (!tryAcquire(jobs)) {
+                if (timeoutMsec <= 0) {
+                    released.await();
+                } else {
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give back the permits of the jobs.
+     * 
+     * @param overloaded
+     *            true if the jobs have timed out or the server has rejected them
+     */
+    public void release(int jobs, boolean overloaded) {
+        if (!isLimited()) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (mode == Mode.AIMD) {
+                if (overloaded) {
+                    limit = Math.max(limit * BACKOFF_RATIO, MIN_LIMIT);
+                } else if (inUse * 2 >= limit) {
+                    limit = Math.min(limit + (double) jobs / limit, maxLimit);
+                }
+            }
+            inUse -= jobs;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the current limit, or zero or less for no limit
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInUse() {
+        lock.lock();
+        try {
+            return inUse;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
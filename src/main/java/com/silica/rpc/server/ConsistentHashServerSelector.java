@@ -0,0 +1,168 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.silica.job.Affinity;
+import com.silica.job.Job;
+import com.silica.service.Service;
+
+/**
+ * Selector to select the server of the affinity key of a job on a consistent hash ring.
+ * <p>
+ * Each server is placed on the ring at many virtual nodes, hashed from its address. A key goes to the first virtual
+ * node at or after the hash of the key, so the jobs with the same key run on the same server, and about 1/N of the
+ * keys move when a server joins or leaves. A job without the key is selected in round-robin. An excluded server, e.g.
+ * on a retry, is skipped to the next virtual node on the ring, so the ring is not built again for it.
+ * </p>
+ */
+public class ConsistentHashServerSelector implements ServerSelectLogic {
+
+    private static final int VIRTUAL_NODES = 160;
+
+    private static final ThreadLocal<MessageDigest> MD5 = new ThreadLocal<MessageDigest>() {
+
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private final ServerSelectLogic fallback = new RoundRobinServerSelector();
+
+    /*
+     * The ring of the last active servers. The list of the active servers is replaced on a change, so the ring is
+     * built again only when the list is not the same instance.
+     */
+    private volatile Ring ring;
+
+    @Override
+    public Server select(Service service, List<Server> activeServers) {
+        return fallback.select(service, activeServers);
+    }
+
+    @Override
+    public Server select(Service service, Job<?> job, List<Server> activeServers) {
+        return select(service, job, activeServers, Collections.<Server> emptySet());
+    }
+
+    @Override
+    public Server select(Service service, Job<?> job, List<Server> activeServers, Collection<Server> excluded) {
+        String key = job instanceof Affinity ? ((Affinity) job).getAffinityKey() : null;
+        if (key == null) {
+            return fallback.select(service, job, activeServers, excluded);
+        }
+        Ring r = ring;
+        if (r == null || r.servers != activeServers) {
+            r = ring = new Ring(activeServers);
+        }
+        Server server = r.get(hash(key), excluded);
+        return server != null ? server : fallback.select(service, job, activeServers, excluded);
+    }
+
+    /**
+     * @return a name to place the server on the ring, which is the same after the server joins or leaves again
+     */
+    protected String getNodeName(Server server) {
+        ServerContext sc = server.getServerContext();
+        return sc != null ? sc.getPublicAddress() : null;
+    }
+
+    private static long hash(String key) {
+        MessageDigest md5 = MD5.get();
+        byte[] digest = md5.digest(key.getBytes(StandardCharsets.UTF_8));
+        long h = 0;
+        for (int i = 0; i < 8; i++) {
+            h = (h << 8) | (digest[i] & 0xff);
+        }
+        return h;
+    }
+
+    private final class Ring {
+
+        private final List<Server> servers;
+        private final long[] hashes;
+        private final Server[] nodes;
+
+        Ring(List<Server> servers) {
+            this.servers = servers;
+
+            long[] h = new long[servers.size() * VIRTUAL_NODES];
+            Server[] n = new Server[h.length];
+            int size = 0;
+            for (Server server : servers) {
+                String name = getNodeName(server);
+                if (name == null) {
+                    continue;
+                }
+                for (int i = 0; i < VIRTUAL_NODES; i++) {
+                    h[size] = hash(name + "#" + i);
+                    n[size] = server;
+                    size++;
+                }
+            }
+            // Sort the virtual nodes by the hash.
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            final long[] unsorted = h;
+            Arrays.sort(order, new Comparator<Integer>() {
+
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return Long.compare(unsorted[a], unsorted[b]);
+                }
+            });
+
+            this.hashes = new long[size];
+            this.nodes = new Server[size];
+            for (int i = 0; i < size; i++) {
+                hashes[i] = h[order[i]];
+                nodes[i] = n[order[i]];
+            }
+        }
+
+        /**
+         * @return the server of the first virtual node at or after the hash which is not excluded, or null if none
+         */
+        Server get(long hash, Collection<Server> excluded) {
+            int i = Arrays.binarySearch(hashes, hash);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            for (int n = 0; n < hashes.length; n++, i++) {
+                Server server = nodes[i % hashes.length];
+                if (!excluded.contains(server)) {
+                    return server;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.silica.service.Service;
+
+/**
+ * Selector to select a server at random, weighted toward the servers which have run jobs faster.
+ * <p>
+ * The cost of a server is the moving average of its latency, multiplied by the jobs in flight on it and by its error
+ * rate. A server which has failed recently costs more, by a penalty decaying over time. A server is selected in
+ * inverse proportion to its cost. A server without latency yet is assumed to be as fast as the fastest one, so that
+ * it gets jobs to be measured.
+ * </p>
+ */
+public class EwmaServerSelector implements ServerSelectLogic {
+
+    private static final double MAX_PENALTY = 10.0;
+    private static final double PENALTY_DECAY_MSEC = 10000.0;
+    private static final double MIN_SUCCESS_RATE = 0.05;
+
+    @Override
+    public Server select(Service service, List<Server> activeServers) {
+        int size = activeServers.size();
+        if (size == 1) {
+            return activeServers.get(0);
+        }
+
+        double fastest = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            double latency = activeServers.get(i).getStatistics().getLatencyNanos();
+            if (latency >= 0 && latency < fastest) {
+                fastest = latency;
+            }
+        }
+        if (fastest == Double.MAX_VALUE) {
+            fastest = 1;
+        }
+
+        long now = System.currentTimeMillis();
+        double[] weights = new double[size];
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            weights[i] = 1 / cost(activeServers.get(i).getStatistics(), fastest, now);
+            total += weights[i];
+        }
+
+        double r = ThreadLocalRandom.current().nextDouble(total);
+        for (int i = 0; i < size; i++) {
+            r -= weights[i];
+            if (r < 0) {
+                return activeServers.get(i);
+            }
+        }
+        return activeServers.get(size - 1);
+    }
+
+    private static double cost(ServerStatistics statistics, double fastest, long now) {
+        double latency = statistics.getLatencyNanos();
+        double cost = Math.max(latency >= 0 ? latency : fastest, 1);
+
+        cost *= 1 + Math.max(statistics.getInFlight(), 0);
+        cost /= Math.max(1 - statistics.getErrorRate(), MIN_SUCCESS_RATE);
+
+        long lastFailure = statistics.getLastFailure();
+        if (lastFailure > 0) {
+            double penalty = Math.exp(-(now - lastFailure) / PENALTY_DECAY_MSEC);
+            cost *= 1 + (MAX_PENALTY - 1) * penalty;
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.silica.Config;
+import com.silica.Silica;
+
+/**
+ * <p>Pings the servers in the background, and feeds the results to their {@link CircuitBreaker}. A server which
+ * responds is asked for its load as well, for the {@link ServerStatistics}. The load is best-effort: a slow or failed
+ * heartbeat never fails the server.</p>
+ * A server is checked once it has run a job, so that a server is not activated only to be checked. A server of an
+ * open breaker is probed when the breaker becomes half-open.
+ */
+public class HealthChecker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HealthChecker.class);
+
+    static final long DEFAULT_INTERVAL_MSEC = 1000L;
+    private static final long DEFAULT_TIMEOUT_MSEC = 1000L;
+
+    private final ServerSelector selector;
+    private final long timeoutMsec;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService pingers;
+    private final Set<Server> beating = Collections.newSetFromMap(new ConcurrentHashMap<Server, Boolean>());
+
+    HealthChecker(ServerSelector selector, long timeoutMsec) {
+        this.selector = selector;
+        this.timeoutMsec = timeoutMsec;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemon("silica-health-check"));
+        this.pingers = Executors.newCachedThreadPool(daemon("silica-health-ping"));
+    }
+
+    /**
+     * Start to check the servers of the selector as the global configuration.
+     * 
+     * @return the checker, or null if the health check is disabled
+     */
+    static HealthChecker start(ServerSelector selector) {
+        long interval = ServerSelector.getGlobalLong(Config.KEY_HEALTH_CHECK_INTERVAL_MSEC, DEFAULT_INTERVAL_MSEC);
+        if (interval <= 0) {
+            return null;
+        }
+        final HealthChecker checker = new HealthChecker(selector,
+                ServerSelector.getGlobalLong(Config.KEY_HEALTH_CHECK_TIMEOUT_MSEC, DEFAULT_TIMEOUT_MSEC));
+        checker.scheduler.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    checker.check();
+                } catch (RuntimeException e) {
+                    LOG.warn("Could not check the servers.", e);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        return checker;
+    }
+
+    void stop() {
+        scheduler.shutdownNow();
+        pingers.shutdownNow();
+    }
+
+    /**
+     * Ping the servers at once, and wait for the results up to the timeout.
+     */
+    void check() {
+        List<Server> targets = new ArrayList<Server>();
+        List<Future<Boolean>> pings = new ArrayList<Future<Boolean>>();
+
+        for (final Server server : selector.selectAll().values()) {
+            ServerContext sc = server.getServerContext();
+            if (sc == null || !sc.isEnable()) {
+                continue;
+            }
+            ServerStatistics statistics = server.getStatistics();
+            CircuitBreaker breaker = statistics.getCircuitBreaker();
+            switch (breaker.getState()) {
+            case CLOSED:
+                if (statistics.getLatencyNanos() < 0 && statistics.getLastFailure() == 0) {
+                    // Not used yet.
+                    continue;
+                }
+                break;
+            case OPEN:
+                if (!breaker.tryHalfOpen()) {
+                    continue;
+                }
+                break;
+            case HALF_OPEN:
+                break;
+            }
+            targets.add(server);
+            pings.add(pingers.submit(new Callable<Boolean>() {
+
+                @Override
+                public Boolean call() throws Exception {
+                    return server.ping();
+                }
+            }));
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMsec;
+        for (int i = 0; i < targets.size(); i++) {
+            Server server = targets.get(i);
+            Future<Boolean> ping = pings.get(i);
+            boolean healthy;
+            try {
+                healthy = ping.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                LOG.debug("Ping failed.", e);
+                ping.cancel(true);
+                healthy = false;
+            }
+
+            CircuitBreaker breaker = server.getStatistics().getCircuitBreaker();
+            if (healthy) {
+                breaker.recovered();
+                heartbeat(server);
+            } else {
+                ServerContext sc = server.getServerContext();
+                LOG.info("The server [{}] did not respond to the health check.", sc != null ? sc.getPublicAddress() : server);
+                breaker.failed();
+            }
+        }
+    }
+
+    /**
+     * Ask the server for its load in the background, up to the timeout. A heartbeat is not sent to a server while
+     * the last one is still running.
+     */
+    private void heartbeat(final Server server) {
+        if (!beating.add(server)) {
+            return;
+        }
+        final FutureTask<Void> beat = new FutureTask<Void>(new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                server.getStatistics().reported(server.heartbeat(Silica.getServiceClass()));
+                return null;
+            }
+        }) {
+
+            @Override
+            protected void done() {
+                beating.remove(server);
+                try {
+                    get();
+                } catch (CancellationException e) {
+                    LOG.debug("The heartbeat timed out.");
+                } catch (Exception e) {
+                    LOG.debug("Could not get the load of the server.", e);
+                }
+            }
+        };
+        try {
+            pingers.execute(beat);
+            scheduler.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+                    beat.cancel(true);
+                }
+            }, timeoutMsec, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            beating.remove(server);
+        }
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        return new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+}
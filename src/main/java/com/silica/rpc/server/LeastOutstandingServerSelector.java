@@ -0,0 +1,45 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.silica.service.Service;
+
+/**
+ * Selector to select the server with the fewest jobs in flight, of two servers picked at random (the power of two
+ * choices). It avoids both the herd to the single least loaded server and the cost to scan all of the servers.
+ */
+public class LeastOutstandingServerSelector implements ServerSelectLogic {
+
+    @Override
+    public Server select(Service service, List<Server> activeServers) {
+        int size = activeServers.size();
+        if (size == 1) {
+            return activeServers.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(size);
+        int j = random.nextInt(size - 1);
+        if (j >= i) {
+            j++;
+        }
+        Server a = activeServers.get(i);
+        Server b = activeServers.get(j);
+        return b.getStatistics().getInFlight() < a.getStatistics().getInFlight() ? b : a;
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import com.silica.job.Job;
+import com.silica.job.JobToken;
+import com.silica.resource.Resource;
+import com.silica.service.LoadReport;
+import com.silica.service.Service;
+import com.silica.service.ServiceException;
+
+/**
+ * A service running in the process of the client, for the jobs routed to the local server.
+ * <p>
+ * The jobs are passed to the service without serialization, unless copy on submit is on. Then the jobs and the
+ * results are copied by serialization, so a job can not share a state with the client, as on a remote server.
+ * </p>
+ * <p>
+ * A job runs on the thread of the caller. On a thread of a fork join pool, the job runs as a managed blocker, so that
+ * the pool keeps its parallelism as it does while waiting for a remote server.
+ * </p>
+ */
+class LocalService implements Service {
+
+    private static final long serialVersionUID = 6012286462591460384L;
+
+    private final Service service;
+    private final boolean copyOnSubmit;
+
+    LocalService(Service service, boolean copyOnSubmit) {
+        this.service = service;
+        this.copyOnSubmit = copyOnSubmit;
+    }
+
+    @Override
+    public void deployResources(String destinationDirectoryOnTheTargetServer, Resource... resources)
+            throws RemoteException {
+
+        service.deployResources(destinationDirectoryOnTheTargetServer, resources);
+    }
+
+    @Override
+    public Map<String, String> getResourceDigests(String destinationDirectoryOnTheTargetServer, String... names)
+            throws RemoteException {
+
+        return service.getResourceDigests(destinationDirectoryOnTheTargetServer, names);
+    }
+
+    @Override
+    public <R extends Serializable> R execute(final Job<R> job) throws RemoteException {
+
+        return copy(run(new Call<R>() {
+
+            @Override
+            public R call() throws RemoteException {
+                return service.execute(copy(job));
+            }
+        }));
+    }
+
+    @Override
+    public <R extends Serializable> R execute(final Job<R> job, final JobToken token) throws RemoteException {
+
+        return copy(run(new Call<R>() {
+
+            @Override
+            public R call() throws RemoteException {
+                return service.execute(copy(job), token);
+            }
+        }));
+    }
+
+    @Override
+    public <R extends Serializable> List<R> executeBatch(final List<Job<R>> jobs, final JobToken token)
+            throws RemoteException {
+
+        return copy(run(new Call<List<R>>() {
+
+            @Override
+            public List<R> call() throws RemoteException {
+                return service.executeBatch(copy(jobs), token);
+            }
+        }));
+    }
+
+    @Override
+    public void cancel(JobToken token) throws RemoteException {
+
+        service.cancel(token);
+    }
+
+    @Override
+    public LoadReport heartbeat() throws RemoteException {
+        return service.heartbeat();
+    }
+
+    private <T> T run(Call<T> call) throws RemoteException {
+
+        if (!(Thread.currentThread() instanceof ForkJoinWorkerThread)) {
+            return call.call();
+        }
+        Blocker<T> blocker = new Blocker<T>(call);
+        try {
+            ForkJoinPool.managedBlock(blocker);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while running the job.", e);
+        }
+        if (blocker.error != null) {
+            throw blocker.error;
+        }
+        return blocker.result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T copy(T object) throws ServiceException {
+
+        if (!copyOnSubmit || object == null) {
+            return object;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(object);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                return (T) in.readObject();
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new ServiceException("Could not copy the object: " + object.getClass().getName(), e);
+        }
+    }
+
+    private interface Call<T> {
+
+        T call() throws RemoteException;
+    }
+
+    private static class Blocker<T> implements ForkJoinPool.ManagedBlocker {
+
+        private final Call<T> call;
+        private T result;
+        private RemoteException error;
+        private boolean done;
+
+        Blocker(Call<T> call) {
+            this.call = call;
+        }
+
+        @Override
+        public boolean block() {
+            try {
+                result = call.call();
+            } catch (RemoteException e) {
+                error = e;
+            } finally {
+                done = true;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.silica.Config;
+import com.silica.Silica;
+
+/**
+ * <p>Watches the file of the server addresses, and adds or removes the servers as the file changes.</p>
+ * The addresses in the file are separated by commas or lines. A line beginning with # is a comment. A server which
+ * has failed to join is added again on the next check.
+ */
+public class MembershipWatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MembershipWatcher.class);
+
+    private static final long DEFAULT_INTERVAL_MSEC = 5000L;
+
+    private final ServerSelector selector;
+    private final File file;
+    private final ScheduledExecutorService scheduler;
+    private long lastModified;
+    private Set<String> addresses = Collections.emptySet();
+
+    MembershipWatcher(ServerSelector selector, File file) {
+        this.selector = selector;
+        this.file = file;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "silica-membership-watcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Start to watch the file of the global configuration.
+     * 
+     * @return the watcher, or null if the file is not configured
+     */
+    static MembershipWatcher start(ServerSelector selector) {
+        String path = Silica.getGlobalConfig(Config.KEY_SERVER_ADDRESSES_FILE);
+        if (path == null || path.trim().length() == 0) {
+            return null;
+        }
+        long interval = ServerSelector.getGlobalLong(Config.KEY_SERVER_ADDRESSES_FILE_INTERVAL_MSEC, DEFAULT_INTERVAL_MSEC);
+
+        final MembershipWatcher watcher = new MembershipWatcher(selector, new File(path.trim()));
+        watcher.scheduler.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    watcher.check();
+                } catch (Exception e) {
+                    LOG.warn("Could not read the server addresses from {}.", watcher.file, e);
+                }
+            }
+        }, 0L, interval, TimeUnit.MILLISECONDS);
+
+        LOG.info("Watching the server addresses in {}.", watcher.file);
+        return watcher;
+    }
+
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    void check() throws IOException {
+        long modified = file.lastModified();
+        if (modified != 0L && modified != lastModified) {
+            lastModified = modified;
+
+            Set<String> read = parse(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+            if (read.isEmpty()) {
+                LOG.warn("{} has no server address. Keep the current servers.", file);
+            } else {
+                addresses = read;
+                for (String address : new ArrayList<String>(selector.selectAll().keySet())) {
+                    if (!addresses.contains(address)) {
+                        LOG.info("Remove the server [{}].", address);
+                        selector.removeServer(address);
+                    }
+                }
+            }
+        }
+        for (String address : addresses) {
+            if (!selector.selectAll().containsKey(address)) {
+                LOG.info("Add the server [{}].", address);
+                selector.addServer(address);
+            }
+        }
+    }
+
+    static Set<String> parse(List<String> lines) {
+        Set<String> addresses = new LinkedHashSet<String>();
+        for (String line : lines) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            for (String address : line.split(",")) {
+                address = address.trim();
+                if (address.length() > 0) {
+                    addresses.add(address);
+                }
+            }
+        }
+        return addresses;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import com.silica.job.Job;
+import com.silica.job.JobException;
+
+/**
+ * A job which does nothing, to check that a server runs jobs before it joins the rotation.
+ */
+public class ProbeJob implements Job<Boolean> {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Boolean execute() throws JobException {
+        return Boolean.TRUE;
+    }
+}
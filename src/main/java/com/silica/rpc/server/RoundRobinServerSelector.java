@@ -16,6 +16,7 @@
 package com.silica.rpc.server;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.silica.service.Service;
 
@@ -24,10 +25,10 @@ import com.silica.service.Service;
  */
 public class RoundRobinServerSelector implements ServerSelectLogic {
 
-    private int pos = -1;
+    private final AtomicInteger pos = new AtomicInteger();
 
     @Override
-    public synchronized Server select(Service service, List<Server> activeServers) {
-        return activeServers.get((activeServers.size() - 1) > (++pos) ? pos : (pos = 0));
+    public Server select(Service service, List<Server> activeServers) {
+        return activeServers.get(Math.floorMod(pos.getAndIncrement(), activeServers.size()));
     }
 }
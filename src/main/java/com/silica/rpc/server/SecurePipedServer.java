@@ -18,6 +18,12 @@ package com.silica.rpc.server;
 import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,7 +31,12 @@ import org.slf4j.LoggerFactory;
 import com.silica.Config;
 import com.silica.Silica;
 import com.silica.job.Callback;
+import com.silica.job.Job;
 import com.silica.resource.Resource;
+import com.silica.resource.ResourceManifest;
+import com.silica.resource.ResourceLoader;
+import com.silica.rpc.ProxyService;
+import com.silica.rpc.Resources;
 import com.silica.rpc.pipe.DummyPipe;
 import com.silica.rpc.pipe.Pipe;
 import com.silica.rpc.pipe.PipeException;
@@ -42,10 +53,14 @@ public abstract class SecurePipedServer implements Server {
 
     private ServerContext context;
     private Pipe pipe;
+    private final ServerStatistics statistics;
+    private final ResourceManifest manifest = new ResourceManifest();
+    private final ConcurrentMap<Class<? extends Service>, Service> localServices = new ConcurrentHashMap<Class<? extends Service>, Service>();
     private final boolean windows = File.pathSeparatorChar == ';';
 
     public SecurePipedServer(ServerContext context) {
         this.context = context;
+        this.statistics = new ServerStatistics(CircuitBreaker.fromConfig(), ConcurrencyLimit.fromConfig(context));
     }
 
     protected abstract void bindLocal(Service service) throws ServerException;
@@ -100,9 +115,46 @@ public abstract class SecurePipedServer implements Server {
         } else {
 
             bindLocal(service);
+            // The jobs routed to this server run on the bound instance.
+            localServices.put(service.getClass(), new LocalService(service, isCopyOnSubmit()));
         }
     }
 
+    /**
+     * An in-process service to run the jobs routed to this server, if this is the local server and the local fast
+     * path is on. The jobs need no resource deployment there.
+     * 
+     * @return the service, or null if the jobs have to be sent to the server
+     */
+    protected Service getLocalService(Class<? extends Service> clazz) throws ServerException {
+
+        if (clazz == ProxyService.class || !isLocalFastPath()) {
+            return null;
+        }
+        Service service = localServices.get(clazz);
+        if (service != null) {
+            return service;
+        }
+        try {
+            service = new LocalService(clazz.newInstance(), isCopyOnSubmit());
+        } catch (ReflectiveOperationException e) {
+            throw new ServerException(MessageFormat.format(
+                    "Could not define the Service [{0}].", clazz.getName()), e);
+        }
+        Service current = localServices.putIfAbsent(clazz, service);
+        return current != null ? current : service;
+    }
+
+    private boolean isLocalFastPath() {
+        ServerContext ctx = getServerContext();
+        return ctx != null && !ctx.isRemote()
+                && Boolean.parseBoolean(Silica.getGlobalConfig(Config.KEY_LOCAL_FAST_PATH));
+    }
+
+    private static boolean isCopyOnSubmit() {
+        return Boolean.parseBoolean(Silica.getGlobalConfig(Config.KEY_LOCAL_COPY_ON_SUBMIT));
+    }
+
     @Override
     public void activate() throws ServerException {
         try {
@@ -148,6 +200,50 @@ public abstract class SecurePipedServer implements Server {
         }
     }
 
+    /**
+     * Deploy resources of the jobs by the service, once for each job class. Only the resources which differ from the
+     * ones on the server are deployed.
+     */
+    protected void deployResources(Service service, List<? extends Job<?>> jobs) throws IOException {
+
+        Set<Class<?>> deployed = new HashSet<Class<?>>();
+        for (Job<?> job : jobs) {
+            if (!deployed.add(job.getClass())) {
+                continue;
+            }
+            Resource[] resources = getResources(job);
+
+            if (resources != null) {
+                try {
+                    String dest = getServerContext().getResourceDirectory();
+                    List<Resource> changed = manifest.changed(service, dest, resources);
+                    if (changed.isEmpty()) {
+                        LOG.debug("The resources of {} are up to date.", job.getClass());
+                        continue;
+                    }
+                    LOG.info("Deploy resources");
+
+                    service.deployResources(dest, changed.toArray(new Resource[changed.size()]));
+                    manifest.deployed(changed);
+
+                } finally {
+
+                    for (Resource resource : resources) {
+                        resource.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The resources of the job, defined by the {@link Resources} of its <code>execute</code> method.
+     */
+    protected Resource[] getResources(Job<?> job) throws IOException {
+
+        return ResourceLoader.defineResources(job.getClass());
+    }
+
     private void cloneModules() throws ServerException {
         if (!getServerContext().isRemote()) {
             // localhost <-> localhostの時は転送不要
@@ -157,12 +253,26 @@ public abstract class SecurePipedServer implements Server {
 
         String[] clonepaths = clone.split(",");
 
+        // Put all the files at once, so that the pipe can put them in parallel.
+        List<Resource> files = new ArrayList<Resource>();
         for (String clonepath : clonepaths) {
-            transportFile(Silica.getBaseDirectory(), clonepath.trim());
+            listFiles(Silica.getBaseDirectory(), clonepath.trim(), files);
+        }
+        if (!files.isEmpty()) {
+            put(getServerContext().getResourceDirectory(), files.toArray(new Resource[files.size()]));
         }
     }
 
     protected void transportFile(String localdir, String name) throws ServerException {
+
+        List<Resource> files = new ArrayList<Resource>();
+        listFiles(localdir, name, files);
+        if (!files.isEmpty()) {
+            put(getServerContext().getResourceDirectory(), files.toArray(new Resource[files.size()]));
+        }
+    }
+
+    private void listFiles(String localdir, String name, List<Resource> files) {
         if (name == null || name.length() == 0) {
 
             return;
@@ -170,13 +280,12 @@ public abstract class SecurePipedServer implements Server {
         File f = new File(localdir, name);
         File[] fc = null;
         if (f.isFile()) {
-            String dest = getServerContext().getResourceDirectory();
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Resource output: {}{} to {}//{}",
-                        localdir, name, getServerContext().getPublicAddress(), dest);
+                        localdir, name, getServerContext().getPublicAddress(), getServerContext().getResourceDirectory());
             }
 
-            put(dest, new Resource(f.getAbsolutePath(), name));
+            files.add(new Resource(f.getAbsolutePath(), name));
 
         } else if ((fc = f.listFiles()) != null && fc.length > 0) {
 
@@ -184,11 +293,11 @@ public abstract class SecurePipedServer implements Server {
 
                 if (name.endsWith("/")) {
 
-                    transportFile(localdir, name + c.getName());
+                    listFiles(localdir, name + c.getName(), files);
 
                 } else {
 
-                    transportFile(localdir, name + "/" + c.getName());
+                    listFiles(localdir, name + "/" + c.getName(), files);
                 }
             }
         }
@@ -200,6 +309,12 @@ public abstract class SecurePipedServer implements Server {
         return context;
     }
 
+    @Override
+    public ServerStatistics getStatistics() {
+
+        return statistics;
+    }
+
     protected void put(String dest, Resource... resources)
             throws ServerException {
 
@@ -261,9 +376,20 @@ public abstract class SecurePipedServer implements Server {
         }
     }
 
+    @Override
+    public boolean ping() {
+
+        if (getServerContext() == null) {
+            return false;
+        }
+        // The jobs to the local server run in process.
+        return isLocalFastPath() || isActive();
+    }
+
     @Override
     public void disactivate() throws ServerException {
 
+        manifest.clear();
         synchronized (this) {
 
             if (pipe != null) {
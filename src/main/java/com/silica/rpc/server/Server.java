@@ -16,8 +16,11 @@
 package com.silica.rpc.server;
 
 import java.io.Serializable;
+import java.util.List;
 
 import com.silica.job.Job;
+import com.silica.job.JobToken;
+import com.silica.service.LoadReport;
 import com.silica.service.Service;
 import com.silica.service.ServiceException;
 
@@ -29,14 +32,34 @@ public interface Server {
 
     public boolean isActive();
 
+    /**
+     * Check whether the server responds, for the {@link HealthChecker}.
+     */
+    public boolean ping();
+
     public void unbind(Class<? extends Service> clazz) throws ServerException;
 
     public void bind(Service service) throws ServerException, ServiceException;
 
     public ServerContext getServerContext();
 
+    /**
+     * Statistics of the jobs sent to the server. They are kept while the server is disactivated.
+     */
+    public ServerStatistics getStatistics();
+
     public void cleanOldModules(boolean wait);
 
-    public <R extends Serializable> R execute(Class<? extends Service> clazz, Job<R> job)
+    public <R extends Serializable> R execute(Class<? extends Service> clazz, Job<R> job, JobToken token)
+            throws ServiceException;
+
+    public <R extends Serializable> List<R> executeBatch(Class<? extends Service> clazz, List<Job<R>> jobs, JobToken token)
             throws ServiceException;
+
+    public void cancel(Class<? extends Service> clazz, JobToken token) throws ServiceException;
+
+    /**
+     * Get the current load of the server from the service.
+     */
+    public LoadReport heartbeat(Class<? extends Service> clazz) throws ServiceException;
 }
@@ -42,6 +42,7 @@ public class ServerContext {
     private final String internalAddress;
     private final int listenPortRmiServer;
     private final int listenPortRmi;
+    private final int nettyListenPort;
     private final String rmiregistryCommand;
     private final Config conf;
     private final String javaHome;
@@ -57,8 +58,11 @@ public class ServerContext {
     private final String sshPass;
     private final String sshUser;
     private final int sshTimeout;
+    private final int weight;
+    private final int maxInFlight;
 
-    private boolean enable;
+    private volatile boolean enable;
+    private volatile Runnable enableListener;
 
     public ServerContext(String publicAddress) throws IOException {
 
@@ -87,6 +91,12 @@ public class ServerContext {
         	listenPortRmi = "0";
         }
         this.listenPortRmi = Integer.parseInt(listenPortRmi);
+
+        String nettyListenPort = conf.get(Config.KEY_NETTY_LISTEN_PORT);
+        if (nettyListenPort == null || nettyListenPort.equals("")) {
+            nettyListenPort = "0";
+        }
+        this.nettyListenPort = Integer.parseInt(nettyListenPort.trim());
         this.rmiregistryCommand = conf.get(Config.KEY_RMIREGISTRY_COMMAND);
         String javaHome = conf.get(Config.KEY_JAVA_HOME);
         if (javaHome == null || javaHome.equals("")) {
@@ -131,6 +141,18 @@ public class ServerContext {
         } else {
             this.sshTimeout = Integer.parseInt(sshTimeoutMsecStr);
         }
+        String weightStr = conf.get(Config.KEY_SERVER_WEIGHT);
+        if (weightStr == null || weightStr.length() == 0) {
+            this.weight = 1;
+        } else {
+            this.weight = Integer.parseInt(weightStr.trim());
+        }
+        String maxInFlightStr = conf.get(Config.KEY_SERVER_MAX_IN_FLIGHT);
+        if (maxInFlightStr == null || maxInFlightStr.length() == 0) {
+            this.maxInFlight = 0;
+        } else {
+            this.maxInFlight = Integer.parseInt(maxInFlightStr.trim());
+        }
     }
 
     protected String getProperty(String key) {
@@ -152,6 +174,13 @@ public class ServerContext {
     public int getListenPortRmi() {
         return listenPortRmi;
     }
+    /**
+     * @return the port of the Netty service, or 0 for the default port
+     */
+    public int getNettyListenPort() {
+        return nettyListenPort;
+    }
+
     public boolean isAutoStartRmiregistry() {
         return rmiregistryCommand != null && !rmiregistryCommand.equals("");
     }
@@ -262,12 +291,39 @@ public class ServerContext {
         return sshTimeout;
     }
 
+    /**
+     * @return a capacity of the server relative to the other servers
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return a number of the jobs in flight on the server, or zero or less for no limit
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
     public boolean isEnable() {
         return enable;
     }
 
     public void setEnable(boolean enable) {
+        boolean changed = this.enable != enable;
         this.enable = enable;
+
+        Runnable listener = enableListener;
+        if (changed && listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Listen to the changes of {@link #isEnable()}.
+     */
+    void setEnableListener(Runnable listener) {
+        this.enableListener = listener;
     }
 
     public boolean isRootDirectory(String path) {
@@ -15,8 +15,11 @@
  */
 package com.silica.rpc.server;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
+import com.silica.job.Job;
 import com.silica.service.Service;
 
 public interface ServerSelectLogic {
@@ -25,4 +28,28 @@ public interface ServerSelectLogic {
      * Select a server from the activeServers.
      */
     public Server select(Service service, List<Server> activeServers);
+
+    /**
+     * Select a server from the activeServers to run the job.
+     * 
+     * @param job
+     *            the job, or null if the server runs more than one job
+     */
+    public default Server select(Service service, Job<?> job, List<Server> activeServers) {
+        return select(service, activeServers);
+    }
+
+    /**
+     * Select a server from the activeServers to run the job, except the excluded servers, e.g. on a retry. The
+     * activeServers are the same snapshot as the other selections, and have at least one server which is not
+     * excluded. By default, the server is selected from a copy of the activeServers without the excluded servers.
+     * 
+     * @param job
+     *            the job, or null if the server runs more than one job
+     */
+    public default Server select(Service service, Job<?> job, List<Server> activeServers, Collection<Server> excluded) {
+        List<Server> candidates = new ArrayList<Server>(activeServers);
+        candidates.removeAll(excluded);
+        return select(service, job, candidates);
+    }
 }
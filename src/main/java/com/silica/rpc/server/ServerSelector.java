@@ -15,32 +15,87 @@
  */
 package com.silica.rpc.server;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.silica.Config;
 import com.silica.Silica;
+import com.silica.job.Job;
+import com.silica.job.JobToken;
 import com.silica.service.Service;
 
 public final class ServerSelector {
 
     private static final Logger LOG = LoggerFactory.getLogger(ServerSelector.class);
 
+    private static final long DEFAULT_DRAIN_TIMEOUT_MSEC = 30000L;
+
     private ServerSelectLogic selectLogic;
-    private TreeMap<String, Server> serverMap = new TreeMap<String, Server>();
-    private List<String> serverMapsKeyList = new ArrayList<String>();
+    private Class<?> serverClass;
+    private final ConcurrentNavigableMap<String, Server> serverMap = new ConcurrentSkipListMap<String, Server>();
+    private final Set<String> removing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ConcurrentMap<String, CompletableFuture<Server>> adding = new ConcurrentHashMap<String, CompletableFuture<Server>>();
+    private final Function<String, Server> serverFactory;
+
+    /*
+     * An immutable snapshot of the enabled servers. It is replaced when a server is enabled or disabled, so that a
+     * selection neither allocates nor locks.
+     */
+    private volatile List<Server> activeServers = Collections.emptyList();
+    private HealthChecker healthChecker;
+    private MembershipWatcher membershipWatcher;
+    private final ExecutorService membership = Executors.newCachedThreadPool(new ThreadFactory() {
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "silica-membership");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final Runnable refresher = new Runnable() {
+
+        @Override
+        public void run() {
+            refresh();
+        }
+    };
 
     private ServerSelector() {
 
+        serverFactory = new Function<String, Server>() {
+
+            @Override
+            public Server apply(String address) {
+                return createServer(address);
+            }
+        };
         try {
             {
                 String classname = Silica.getGlobalConfig("server.select.logic");
@@ -53,86 +108,421 @@ public final class ServerSelector {
             }
             {
                 String classname = Silica.getGlobalConfig("server.class");
-                Class<?> s = ServerSelector.class.getClassLoader().loadClass(classname);
+                serverClass = ServerSelector.class.getClassLoader().loadClass(classname);
 
                 String[] addresses = Silica.getGlobalConfig("server.addresses").split(",");
 
+                /*
+                 * Resolving the address of a server may take a while, so the server contexts are created at once.
+                 * The tasks must not touch this class, which is still being initialized.
+                 */
+                Map<String, Future<ServerContext>> resolving = new LinkedHashMap<String, Future<ServerContext>>();
                 for (String address : addresses) {
                     address = address.trim();
                     if (address.length() == 0) {
                         throw new ServerException("server.addresses must not be empty: " + Silica.getGlobalConfig("server.addresses"));
                     }
-                    if (serverMap.get(address) == null) {
-                        createServer(address, s);
+                    address = address.replaceAll("[ ].", "");
+                    if (resolving.get(address) == null) {
+                        final String key = address;
+                        resolving.put(key, membership.submit(new Callable<ServerContext>() {
+
+                            @Override
+                            public ServerContext call() throws IOException {
+                                return new ServerContext(key);
+                            }
+                        }));
                     } else {
                         LOG.warn("server [{}] is already in silica config file.", address);
                     }
                 }
+                for (Entry<String, Future<ServerContext>> entry : resolving.entrySet()) {
+                    try {
+                        Server server = createServer(entry.getValue().get());
+                        if (server != null) {
+                            register(entry.getKey(), server, true);
+                        }
+                    } catch (ExecutionException e) {
+                        LOG.error(MessageFormat.format("Could not create Server [{0}].", entry.getKey()), e.getCause());
+                    }
+                }
             }
         } catch (Exception e) {
 
             LOG.error("Could not initialize ServerSelector.", e);
         }
+        refresh();
+        healthChecker = HealthChecker.start(this);
+        membershipWatcher = MembershipWatcher.start(this);
+    }
+
+    /**
+     * A selector without servers, which creates the added servers by the factory. Only for the tests.
+     */
+    ServerSelector(ServerSelectLogic selectLogic, Function<String, Server> serverFactory) {
+        this.selectLogic = selectLogic;
+        this.serverFactory = serverFactory;
     }
 
-    private void createServer(String address, Class<?> serverClass) {
+    private Server createServer(String address) {
 
         try {
 
-            address = address.replaceAll("[ ].", "");
+            return createServer(new ServerContext(address));
 
-            Constructor<?> cons = serverClass.getConstructor(ServerContext.class);
+        } catch (Exception e) {
+            LOG.error(MessageFormat.format(
+                    "Could not create Server [{0}].", serverClass.getName()), e);
+            return null;
+        }
+    }
+
+    private Server createServer(ServerContext sc) {
 
-            ServerContext sc = new ServerContext(address);
-            sc.setEnable(true);
-            Server server = (Server) cons.newInstance(new Object[] { sc });
-            serverMap.put(address, server);
-            serverMapsKeyList.add(address);
+        try {
+
+            Constructor<?> cons = serverClass.getConstructor(ServerContext.class);
 
-            LOG.debug("cached server: {}", address);
+            return (Server) cons.newInstance(new Object[] { sc });
 
         } catch (Exception e) {
             LOG.error(MessageFormat.format(
                     "Could not create Server [{0}].", serverClass.getName()), e);
+            return null;
         }
     }
 
-    private static ServerSelector SINGLE_SELECTOR = new ServerSelector();
+    private void register(String address, Server server, boolean enable) {
 
-    public static ServerSelector createSelector() {
+        ServerContext sc = server.getServerContext();
+        sc.setEnable(enable);
+        sc.setEnableListener(refresher);
+        server.getStatistics().getCircuitBreaker().setListener(refresher);
+        serverMap.put(address, server);
 
-        return SINGLE_SELECTOR;
+        LOG.debug("cached server: {}", address);
     }
 
-    public Server select(Service service) {
-        List<Server> activeServers = new ArrayList<Server>();
+    private void unregister(String address, Server server) {
+
+        serverMap.remove(address, server);
+        refresh();
+    }
+
+    /**
+     * Activate all the enabled servers at once, and run a probe job on each of them, so that the first jobs do not
+     * wait for the servers to start.
+     * 
+     * @return whether each server is ready, by address
+     */
+    public Map<String, Boolean> warmUp() {
+
+        long start = System.currentTimeMillis();
+
+        Map<String, CompletableFuture<Server>> joining = new LinkedHashMap<String, CompletableFuture<Server>>();
         for (Entry<String, Server> entry : serverMap.entrySet()) {
-            if (entry.getValue().getServerContext().isEnable()) {
-                activeServers.add(entry.getValue());
+            ServerContext sc = entry.getValue().getServerContext();
+            if (sc != null && sc.isEnable()) {
+                joining.put(entry.getKey(), join(entry.getKey(), entry.getValue()));
+            }
+        }
+        Map<String, Boolean> ready = new LinkedHashMap<String, Boolean>();
+        int readyCount = 0;
+        for (Entry<String, CompletableFuture<Server>> entry : joining.entrySet()) {
+            try {
+                entry.getValue().join();
+                ready.put(entry.getKey(), Boolean.TRUE);
+                readyCount++;
+            } catch (CompletionException e) {
+                ready.put(entry.getKey(), Boolean.FALSE);
+            }
+        }
+        LOG.info("{} of {} servers are ready in {} msec.", readyCount, ready.size(), System.currentTimeMillis() - start);
+        return ready;
+    }
+
+    /**
+     * Activate the server in the background, and run a probe job on it.
+     */
+    private CompletableFuture<Server> join(final String address, final Server server) {
+
+        final CompletableFuture<Server> joined = new CompletableFuture<Server>();
+        membership.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    server.activate();
+                    server.execute(Silica.getServiceClass(), new ProbeJob(), new JobToken(0L));
+
+                    joined.complete(server);
+
+                } catch (Exception e) {
+                    LOG.error(MessageFormat.format("The server [{0}] is not ready.", address), e);
+                    joined.completeExceptionally(e);
+                }
+            }
+        });
+        return joined;
+    }
+
+    /**
+     * Add a server without restarting. The server is activated in the background, and joins the rotation once it has
+     * run a probe job. If it fails to join, it is removed again, so that it can be added later.
+     * 
+     * @return a future completed with the server when it has joined the rotation
+     */
+    public CompletableFuture<Server> addServer(String address) {
+
+        final String key = address.trim().replaceAll("[ ].", "");
+        final CompletableFuture<Server> joined = new CompletableFuture<Server>();
+
+        if (removing.contains(key)) {
+            joined.completeExceptionally(new IllegalStateException("The server is being removed: " + key));
+            return joined;
+        }
+        // Only one of the concurrent calls for the address creates the server.
+        CompletableFuture<Server> current = adding.putIfAbsent(key, joined);
+        if (current != null) {
+            return current;
+        }
+        Server existing = serverMap.get(key);
+        if (existing != null) {
+            adding.remove(key, joined);
+            joined.complete(existing);
+            return joined;
+        }
+        final Server server = serverFactory.apply(key);
+        if (server == null) {
+            adding.remove(key, joined);
+            joined.completeExceptionally(new ServerException("Could not create the server: " + key));
+            return joined;
+        }
+        register(key, server, false);
+
+        join(key, server).whenComplete(new BiConsumer<Server, Throwable>() {
+
+            @Override
+            public void accept(Server s, Throwable failure) {
+                if (failure == null) {
+                    server.getServerContext().setEnable(true);
+                    adding.remove(key, joined);
+                    LOG.info("The server [{}] has joined.", key);
+                    joined.complete(server);
+                    return;
+                }
+                // Let the server be added again.
+                unregister(key, server);
+                adding.remove(key, joined);
+                try {
+                    server.disactivate();
+                } catch (Exception e) {
+                    LOG.warn(MessageFormat.format("Could not disactivate the server [{0}].", key), e);
+                }
+                joined.completeExceptionally(failure);
+            }
+        });
+        return joined;
+    }
+
+    /**
+     * Remove a server without restarting. The server is taken out of the rotation at once, and is disactivated after
+     * the jobs in flight on it have completed, or after the drain timeout.
+     * 
+     * @return a future completed when the server has been removed
+     */
+    public CompletableFuture<Void> removeServer(String address) {
+
+        final String key = address.trim();
+        final CompletableFuture<Void> removed = new CompletableFuture<Void>();
+
+        final Server server = serverMap.get(key);
+        if (server == null || !removing.add(key)) {
+            removed.complete(null);
+            return removed;
+        }
+        ServerContext sc = server.getServerContext();
+        if (sc != null) {
+            sc.setEnable(false);
+        }
+        membership.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    drain(key, server);
+
+                    unregister(key, server);
+                    server.disactivate();
+
+                    LOG.info("The server [{}] has been removed.", key);
+                    removed.complete(null);
+
+                } catch (Exception e) {
+                    LOG.error(MessageFormat.format("Could not remove the server [{0}].", key), e);
+                    removed.completeExceptionally(e);
+                } finally {
+                    removing.remove(key);
+                }
+            }
+        });
+        return removed;
+    }
+
+    private void drain(String address, Server server) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + getGlobalLong(Config.KEY_SERVER_DRAIN_TIMEOUT_MSEC, DEFAULT_DRAIN_TIMEOUT_MSEC);
+        int inFlight;
+        while ((inFlight = server.getStatistics().getInFlight()) > 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                LOG.warn("The server [{}] still has {} jobs in flight. Remove it anyway.", address, inFlight);
+                return;
             }
+            Thread.sleep(100L);
+        }
+    }
+
+    static long getGlobalLong(String key, long defaultValue) {
+        String value = Silica.getGlobalConfig(key);
+        if (value == null || value.length() == 0) {
+            return defaultValue;
         }
-        if (activeServers.size() == 0) {
+        return Long.parseLong(value);
+    }
+
+    /*
+     * The selector is created on the first use, not when the class is loaded.
+     */
+    private static final class Holder {
+        private static final ServerSelector SINGLE_SELECTOR = new ServerSelector();
+    }
+
+    /*
+     * A selector which replaces the single selector, for the tests.
+     */
+    private static volatile ServerSelector replacement;
+
+    public static ServerSelector createSelector() {
+
+        ServerSelector selector = replacement;
+        return selector != null ? selector : Holder.SINGLE_SELECTOR;
+    }
+
+    /**
+     * Replace the selector of {@link #createSelector()}, or restore the single selector by null.
+     */
+    static void replace(ServerSelector selector) {
+        replacement = selector;
+    }
+
+    public Server select(Service service) {
+        return select(service, (Job<?>) null);
+    }
+
+    /**
+     * Select a server to run the job.
+     */
+    public Server select(Service service, Job<?> job) {
+        List<Server> active = activeServers;
+        if (active.isEmpty()) {
 
             throw new IllegalStateException("Server are unavailable.");
         }
 
-        return selectLogic.select(service, activeServers);
+        return selectLogic.select(service, job, active);
     }
 
-    Map<String, Server> selectAll() {
+    /**
+     * Select a server except the excluded servers.
+     */
+    public Server select(Service service, Collection<Server> excluded) {
+        return select(service, null, excluded);
+    }
+
+    /**
+     * Select a server to run the job except the excluded servers.
+     */
+    public Server select(Service service, Job<?> job, Collection<Server> excluded) {
+        if (excluded.isEmpty()) {
+            return select(service, job);
+        }
+        List<Server> active = activeServers;
+        if (excluded.containsAll(active)) {
+
+            throw new IllegalStateException("Server are unavailable.");
+        }
+
+        return selectLogic.select(service, job, active, excluded);
+    }
+
+    /**
+     * Take a new snapshot of the enabled servers whose circuit breaker is closed. If the breakers of all the servers
+     * are open, all the enabled servers are used rather than none.
+     */
+    private synchronized void refresh() {
+        List<Server> enabled = new ArrayList<Server>();
+        List<Server> active = new ArrayList<Server>();
+        for (Server server : serverMap.values()) {
+            ServerContext sc = server.getServerContext();
+            if (sc != null && sc.isEnable()) {
+                enabled.add(server);
+                if (server.getStatistics().getCircuitBreaker().isClosed()) {
+                    active.add(server);
+                }
+            }
+        }
+        if (active.isEmpty() && !enabled.isEmpty()) {
+            LOG.warn("The circuit breakers of all the servers are open.");
+            active = enabled;
+        }
+        activeServers = Collections.unmodifiableList(active);
+
+        LOG.debug("active servers: {}", active.size());
+    }
+
+    /**
+     * Select a server for each of the jobs.
+     * 
+     * @return indexes of the jobs grouped by the selected server
+     */
+    public Map<Server, List<Integer>> distribute(Service service, List<? extends Job<?>> jobs) {
+        Map<Server, List<Integer>> shares = new LinkedHashMap<Server, List<Integer>>();
+        for (int i = 0; i < jobs.size(); i++) {
+            Server server = select(service, jobs.get(i));
+            List<Integer> share = shares.get(server);
+            if (share == null) {
+                share = new ArrayList<Integer>();
+                shares.put(server, share);
+            }
+            share.add(i);
+        }
+        return shares;
+    }
+
+    public Map<String, Server> selectAll() {
 
         return Collections.unmodifiableMap(serverMap);
     }
 
     public void setDisactiveAll() throws ServerException {
 
+        if (healthChecker != null) {
+            healthChecker.stop();
+            healthChecker = null;
+        }
+        if (membershipWatcher != null) {
+            membershipWatcher.stop();
+            membershipWatcher = null;
+        }
         try {
             Map<String, Server> servers = selectAll();
 
             for (Entry<String, Server> entry : servers.entrySet()) {
                 Server server = entry.getValue();
 
-                server.getServerContext().setEnable(false);
+                ServerContext sc = server.getServerContext();
+                if (sc != null) {
+                    sc.setEnable(false);
+                }
                 server.disactivate();
             }
         } catch (Exception e) {
@@ -0,0 +1,156 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.silica.service.LoadReport;
+
+/**
+ * Statistics of the jobs sent to a server by this client, for the {@link ServerSelectLogic}.
+ * <p>
+ * The latency and the error rate are exponentially weighted moving averages, so that they follow the recent state
+ * of the server. The load reported by the server itself is updated on the heartbeats of the {@link HealthChecker}.
+ * </p>
+ */
+public class ServerStatistics {
+
+    /**
+     * A weight of the latest sample in the moving averages.
+     */
+    private static final double ALPHA = 0.2;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final CircuitBreaker circuitBreaker;
+    private final ConcurrencyLimit concurrencyLimit;
+
+    private volatile double latencyNanos = -1;
+    private volatile double errorRate;
+    private volatile long lastFailure;
+    private volatile LoadReport loadReport;
+    private volatile long loadReportTime;
+
+    public ServerStatistics() {
+        this(new CircuitBreaker(0, 0L));
+    }
+
+    public ServerStatistics(CircuitBreaker circuitBreaker) {
+        this(circuitBreaker, new ConcurrencyLimit(0, ConcurrencyLimit.Mode.FIXED));
+    }
+
+    public ServerStatistics(CircuitBreaker circuitBreaker, ConcurrencyLimit concurrencyLimit) {
+        this.circuitBreaker = circuitBreaker;
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    /**
+     * Count the jobs which have been sent to the server.
+     */
+    public void begin(int jobs) {
+        inFlight.addAndGet(jobs);
+    }
+
+    /**
+     * Count the jobs which have completed or failed.
+     */
+    public void end(int jobs) {
+        inFlight.addAndGet(-jobs);
+    }
+
+    /**
+     * Record a job which the server has run, whether the job itself has succeeded or not.
+     */
+    public void succeeded(long latencyNanos) {
+        synchronized (this) {
+            this.latencyNanos = this.latencyNanos < 0 ? latencyNanos : average(this.latencyNanos, latencyNanos);
+            this.errorRate = average(errorRate, 0);
+        }
+        circuitBreaker.succeeded();
+    }
+
+    /**
+     * Record a failure of the server to run a job.
+     */
+    public void failed() {
+        synchronized (this) {
+            this.errorRate = average(errorRate, 1);
+            this.lastFailure = System.currentTimeMillis();
+        }
+        circuitBreaker.failed();
+    }
+
+    /**
+     * Record the load which the server has reported.
+     */
+    public void reported(LoadReport loadReport) {
+        this.loadReport = loadReport;
+        this.loadReportTime = System.currentTimeMillis();
+    }
+
+    private static double average(double current, double sample) {
+        return current + ALPHA * (sample - current);
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public ConcurrencyLimit getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * @return a number of the jobs running on the server
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the average latency of a job in nano seconds, or -1 if no job has completed yet
+     */
+    public double getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @return the average rate of the failures, from 0 to 1
+     */
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * @return the time of the last failure in milli seconds, or zero if the server has never failed
+     */
+    public long getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * @return the latest load which the server has reported, or null if the server has not reported yet
+     */
+    public LoadReport getLoadReport() {
+        return loadReport;
+    }
+
+    /**
+     * @return the time when the latest load was reported in milli seconds, or zero if the server has not reported yet
+     */
+    public long getLoadReportTime() {
+        return loadReportTime;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.silica.job.Job;
+import com.silica.service.Service;
+
+/**
+ * Selector to select the servers in proportion to the <code>server.weight</code> of the servers, in the smooth
+ * weighted round-robin of nginx.
+ * <p>
+ * On each selection, every server gains its weight, and the server with the most gains is selected and loses the
+ * total of the weights. So a server of weight 5 among the weights 5, 1, 1 is selected as a, a, b, a, c, a, a, rather
+ * than five times in a row. A server of weight 0 is not selected. An excluded server, e.g. on a retry, neither gains
+ * nor loses.
+ * </p>
+ */
+public class WeightedRoundRobinServerSelector implements ServerSelectLogic {
+
+    private final ServerSelectLogic fallback = new RoundRobinServerSelector();
+
+    /*
+     * The weight and the current gains of each server. The list of the active servers is replaced on a change, so the
+     * servers which left are removed only when the list is not the same instance.
+     */
+    private final Map<Server, int[]> states = new HashMap<Server, int[]>();
+    private List<Server> servers;
+
+    @Override
+    public Server select(Service service, List<Server> activeServers) {
+        return select(service, null, activeServers, Collections.<Server> emptySet());
+    }
+
+    @Override
+    public Server select(Service service, Job<?> job, List<Server> activeServers) {
+        return select(service, job, activeServers, Collections.<Server> emptySet());
+    }
+
+    @Override
+    public synchronized Server select(Service service, Job<?> job, List<Server> activeServers,
+            Collection<Server> excluded) {
+        if (servers != activeServers) {
+            servers = activeServers;
+            states.keySet().retainAll(activeServers);
+        }
+        int total = 0;
+        Server best = null;
+        int[] bestState = null;
+        for (Server server : activeServers) {
+            int[] state = states.get(server);
+            if (state == null) {
+                state = new int[] { Math.max(getWeight(server), 0), 0 };
+                states.put(server, state);
+            }
+            if (state[0] <= 0 || excluded.contains(server)) {
+                continue;
+            }
+            total += state[0];
+            state[1] += state[0];
+            if (bestState == null || state[1] > bestState[1]) {
+                best = server;
+                bestState = state;
+            }
+        }
+        if (best == null) {
+            return fallback.select(service, job, activeServers, excluded);
+        }
+        bestState[1] -= total;
+        return best;
+    }
+
+    protected int getWeight(Server server) {
+        ServerContext sc = server.getServerContext();
+        return sc != null ? sc.getWeight() : 0;
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server.netty;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.rmi.ConnectException;
+import java.rmi.RemoteException;
+import java.rmi.UnmarshalException;
+import java.text.MessageFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.serialization.ClassResolvers;
+import io.netty.handler.codec.serialization.ObjectDecoder;
+import io.netty.handler.codec.serialization.ObjectEncoder;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * A long-lived connection to a {@link NettyServer}.
+ * <p>
+ * Requests are written without waiting for the previous responses, and each response is paired with its request by
+ * the request id, so any number of jobs can be in flight on the connection at a time. The calls waiting for a response
+ * fail when the connection is closed.
+ * </p>
+ */
+final class NettyConnection extends SimpleChannelInboundHandler<NettyResponse> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NettyConnection.class);
+
+    static final int MAX_OBJECT_SIZE = 64 * 1024 * 1024;
+    private static final int CONNECT_TIMEOUT_MSEC = 10000;
+
+    private static final EventLoopGroup GROUP = new NioEventLoopGroup(0,
+            new DefaultThreadFactory("silica-netty-client", true));
+
+    private final AtomicLong requestIds = new AtomicLong();
+    private final ConcurrentMap<Long, CompletableFuture<NettyResponse>> pending = new ConcurrentHashMap<Long, CompletableFuture<NettyResponse>>();
+    private volatile Channel channel;
+    private volatile boolean closed;
+
+    private NettyConnection() {
+    }
+
+    static NettyConnection open(String host, int port) throws IOException, InterruptedException {
+
+        final NettyConnection connection = new NettyConnection();
+
+        Bootstrap bootstrap = new Bootstrap()
+                .group(GROUP)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MSEC)
+                .handler(new ChannelInitializer<SocketChannel>() {
+
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(
+                                new ObjectEncoder(),
+                                new ObjectDecoder(MAX_OBJECT_SIZE,
+                                        ClassResolvers.softCachingConcurrentResolver(NettyConnection.class.getClassLoader())),
+                                connection);
+                    }
+                });
+
+        ChannelFuture future = bootstrap.connect(host, port).await();
+        if (!future.isSuccess()) {
+            Throwable cause = future.cause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+        connection.channel = future.channel();
+        return connection;
+    }
+
+    boolean isActive() {
+        Channel c = channel;
+        return c != null && c.isActive();
+    }
+
+    /**
+     * Send the request and wait for its response.
+     * 
+     * @param timeoutMsec
+     *            the time to wait for the response, or zero or less to wait until the connection is closed
+     * @return the result of the request
+     */
+    Object call(NettyRequest request, long timeoutMsec) throws RemoteException {
+
+        final long id = requestIds.incrementAndGet();
+        request.setId(id);
+
+        final CompletableFuture<NettyResponse> response = new CompletableFuture<NettyResponse>();
+        pending.put(id, response);
+        if (closed) {
+            // The pending calls have already been failed.
+            response.completeExceptionally(new ClosedChannelException());
+        }
+
+        NettyResponse r = null;
+        try {
+            channel.writeAndFlush(request).addListener(new ChannelFutureListener() {
+
+                @Override
+                public void operationComplete(ChannelFuture future) {
+                    if (!future.isSuccess()) {
+                        response.completeExceptionally(future.cause());
+                    }
+                }
+            });
+
+            r = timeoutMsec > 0 ? response.get(timeoutMsec, TimeUnit.MILLISECONDS) : response.get();
+
+        } catch (TimeoutException e) {
+            throw new RemoteException(MessageFormat.format("The response of {0} did not arrive in {1} msec.",
+                    request, String.valueOf(timeoutMsec)), e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ClosedChannelException) {
+                // The request has not been sent.
+                throw new ConnectException("The connection has been closed.", (ClosedChannelException) cause);
+            }
+            if (cause instanceof EOFException) {
+                throw new UnmarshalException("The connection has been closed before the response.", (EOFException) cause);
+            }
+            throw new RemoteException("Could not send the request.", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for the response.", e);
+        } finally {
+            pending.remove(id);
+        }
+
+        Exception error = r.getError();
+        if (error instanceof RemoteException) {
+            throw (RemoteException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error != null) {
+            throw new RemoteException("The service has failed.", error);
+        }
+        return r.getResult();
+    }
+
+    void close() {
+        Channel c = channel;
+        if (c != null) {
+            c.close();
+        }
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, NettyResponse response) {
+
+        CompletableFuture<NettyResponse> future = pending.get(response.getId());
+        if (future != null) {
+            future.complete(response);
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+
+        closed = true;
+        EOFException e = new EOFException("The connection has been closed.");
+        for (CompletableFuture<NettyResponse> future : pending.values()) {
+            future.completeExceptionally(e);
+        }
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+
+        LOG.warn("Close the connection to {}.", ctx.channel().remoteAddress(), cause);
+        ctx.close();
+    }
+}
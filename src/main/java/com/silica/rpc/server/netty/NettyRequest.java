@@ -0,0 +1,66 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server.netty;
+
+import java.io.Serializable;
+
+/**
+ * A call of a service method. The id pairs the call with its {@link NettyResponse} on a multiplexed connection.
+ */
+final class NettyRequest implements Serializable {
+
+    private static final long serialVersionUID = 4207317755512834107L;
+
+    static enum Method {
+        DEPLOY_RESOURCES, RESOURCE_DIGESTS, EXECUTE, EXECUTE_BATCH, CANCEL, HEARTBEAT, UNBIND, SHUTDOWN
+    }
+
+    private long id;
+    private final String serviceName;
+    private final Method method;
+    private final Object[] arguments;
+
+    NettyRequest(String serviceName, Method method, Object... arguments) {
+        this.serviceName = serviceName;
+        this.method = method;
+        this.arguments = arguments;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    void setId(long id) {
+        this.id = id;
+    }
+
+    String getServiceName() {
+        return serviceName;
+    }
+
+    Method getMethod() {
+        return method;
+    }
+
+    Object[] getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public String toString() {
+        return "NettyRequest [id=" + id + ", serviceName=" + serviceName + ", method=" + method + "]";
+    }
+}
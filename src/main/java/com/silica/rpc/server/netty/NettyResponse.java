@@ -0,0 +1,51 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server.netty;
+
+import java.io.Serializable;
+
+/**
+ * A result of a {@link NettyRequest}.
+ */
+final class NettyResponse implements Serializable {
+
+    private static final long serialVersionUID = -1650712345986019288L;
+
+    private final long id;
+    private final Object result;
+    private final Exception error;
+
+    NettyResponse(long id, Object result, Exception error) {
+        this.id = id;
+        this.result = result;
+        this.error = error;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    Object getResult() {
+        return result;
+    }
+
+    /**
+     * @return the exception thrown by the service, or null if the call has succeeded
+     */
+    Exception getError() {
+        return error;
+    }
+}
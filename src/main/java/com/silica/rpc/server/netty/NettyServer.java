@@ -0,0 +1,451 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server.netty;
+
+import java.io.Serializable;
+import java.net.ConnectException;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.silica.Config;
+import com.silica.Silica;
+import com.silica.job.Job;
+import com.silica.job.JobToken;
+import com.silica.rpc.server.SecurePipedServer;
+import com.silica.rpc.server.ServerContext;
+import com.silica.rpc.server.ServerException;
+import com.silica.rpc.server.netty.NettyRequest.Method;
+import com.silica.service.LoadReport;
+import com.silica.service.Service;
+import com.silica.service.ServiceException;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.serialization.ClassResolvers;
+import io.netty.handler.codec.serialization.ObjectDecoder;
+import io.netty.handler.codec.serialization.ObjectEncoder;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * A server connected by Netty.
+ * <p>
+ * The jobs to the server share one long-lived connection, instead of a connection per call of RMI. The service is
+ * bound on the port of <code>netty.listen.port</code>, and shut down by a request when the server is disactivated.
+ * </p>
+ */
+public class NettyServer extends SecurePipedServer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NettyServer.class);
+    private static final int MAX_RETRY = 3;
+    private static final int DEFAULT_PORT = 8090;
+    private static final long DEFAULT_CALL_TIMEOUT_MSEC = 60000L;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long callTimeoutMsec;
+
+    private volatile NettyConnection connection;
+    private boolean connected;
+
+    // The service side.
+    private final Map<String, Service> services = new ConcurrentHashMap<String, Service>();
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private ExecutorService jobExecutor;
+    private Channel serverChannel;
+
+    public NettyServer(ServerContext context) {
+        super(context);
+
+        String callTimeout = Silica.getGlobalConfig(Config.KEY_NETTY_CALL_TIMEOUT_MSEC);
+        this.callTimeoutMsec = callTimeout == null || callTimeout.trim().length() == 0
+                ? DEFAULT_CALL_TIMEOUT_MSEC : Long.parseLong(callTimeout.trim());
+    }
+
+    @Override
+    protected void bindLocal(Service service) throws ServerException {
+
+        String name = Silica.getGlobalConfig(Config.KEY_VERSION) + service.getClass().getName();
+        services.put(name, service);
+
+        lock.lock();
+        try {
+            if (serverChannel == null) {
+                startService();
+            }
+        } catch (Exception e) {
+            services.remove(name);
+            throw new ServerException(MessageFormat.format(
+                    "Could not bind the class name:[{0}].", service.getClass().getName()), e);
+        } finally {
+            lock.unlock();
+        }
+
+        LOG.info("Netty service is ready for bind name:{} on port {}.", name, getPort());
+    }
+
+    private void startService() throws InterruptedException {
+
+        bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("silica-netty-boss"));
+        workerGroup = new NioEventLoopGroup(0, new DefaultThreadFactory("silica-netty-worker"));
+        jobExecutor = Executors.newCachedThreadPool(new DefaultThreadFactory("silica-netty-job", true));
+
+        final NettyServiceHandler handler = new NettyServiceHandler(services, jobExecutor, new Runnable() {
+
+            @Override
+            public void run() {
+                lock.lock();
+                try {
+                    if (services.isEmpty()) {
+                        stopService();
+                        LOG.info("The Netty service has been shut down.");
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+
+        ServerBootstrap bootstrap = new ServerBootstrap()
+                .group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.SO_KEEPALIVE, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(
+                                new ObjectEncoder(),
+                                new ObjectDecoder(NettyConnection.MAX_OBJECT_SIZE,
+                                        ClassResolvers.softCachingConcurrentResolver(NettyServer.class.getClassLoader())),
+                                handler);
+                    }
+                });
+        try {
+            serverChannel = bootstrap.bind(getPort()).sync().channel();
+        } catch (InterruptedException | RuntimeException e) {
+            stopService();
+            throw e;
+        } catch (Exception e) {
+            // e.g. The port is already in use.
+            stopService();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void stopService() {
+
+        if (serverChannel != null) {
+            serverChannel.close().awaitUninterruptibly();
+            serverChannel = null;
+        }
+        if (bossGroup != null) {
+            bossGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
+            jobExecutor.shutdownNow();
+            bossGroup = null;
+            workerGroup = null;
+            jobExecutor = null;
+        }
+    }
+
+    /**
+     * Unbind the service. If the service is not bound in this JVM, e.g. on <code>-o unbind</code>, the service bound
+     * on the port is asked to unbind it.
+     */
+    @Override
+    public void unbind(Class<? extends Service> clazz) throws ServerException {
+
+        String name = Silica.getGlobalConfig(Config.KEY_VERSION) + clazz.getName();
+
+        if (services.remove(name) == null) {
+            try {
+                NettyConnection c = NettyConnection.open(getAddress(), getPort());
+                try {
+                    c.call(new NettyRequest(name, Method.UNBIND), callTimeoutMsec);
+                } finally {
+                    c.close();
+                }
+            } catch (Exception e) {
+                throw new ServerException(MessageFormat.format(
+                        "Could not unbind the class name:[{0}].", name), e);
+            }
+            LOG.info("Netty service bind name:{} on port {} has been unbinded.", name, getPort());
+            return;
+        }
+        lock.lock();
+        try {
+            if (services.isEmpty()) {
+                stopService();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        LOG.info("Netty service bind name:{} has been unbinded.", name);
+    }
+
+    @Override
+    public void disactivate() throws ServerException {
+
+        ServerContext conf = getServerContext();
+        if (conf == null) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            NettyConnection c = connection;
+            connection = null;
+            connected = false;
+            stopService();
+
+            if (c == null) {
+                return;
+            }
+            if (conf.isRemote() && c.isActive()) {
+                try {
+                    c.call(new NettyRequest(null, Method.SHUTDOWN), callTimeoutMsec);
+                } catch (Exception e) {
+                    LOG.warn("Could not shut down the Netty service on {}.", conf.getPublicAddress(), e);
+                }
+            }
+            c.close();
+
+            String command = MessageFormat.format(
+                    conf.getDeactivationCommand(),
+                    String.valueOf(getPort()),
+                    conf.getResourceDirectory());
+
+            if (command != null && !command.equals("")) {
+                LOG.debug("Server deactivation command: {}", command);
+                execute(command);
+            } else {
+                LOG.debug("Server deactivation command is not defined.");
+            }
+        } finally {
+            lock.unlock();
+            super.disactivate();
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+
+        NettyConnection c = connection;
+        return c != null && c.isActive();
+    }
+
+    @Override
+    public <R extends Serializable> R execute(Class<? extends Service> clazz,
+            Job<R> job, JobToken token) throws ServiceException {
+
+        try {
+            Service service = prepare(clazz, Collections.singletonList(job));
+
+            LOG.info("Execute the job: {}", job.getClass());
+
+            return service.execute(job, token);
+
+        } catch (Exception e) {
+
+            throw new ServiceException("Could not execute the service.", e);
+        }
+    }
+
+    @Override
+    public <R extends Serializable> List<R> executeBatch(Class<? extends Service> clazz,
+            List<Job<R>> jobs, JobToken token) throws ServiceException {
+
+        try {
+            Service service = prepare(clazz, jobs);
+
+            LOG.info("Execute {} jobs in a batch.", jobs.size());
+
+            return service.executeBatch(jobs, token);
+
+        } catch (Exception e) {
+
+            throw new ServiceException("Could not execute the service.", e);
+        }
+    }
+
+    @Override
+    public void cancel(Class<? extends Service> clazz, JobToken token) throws ServiceException {
+
+        try {
+            Service service = getLocalService(clazz);
+            if (service == null) {
+                NettyConnection c = connection;
+                if (c == null || !c.isActive()) {
+                    // The job has been lost with the connection.
+                    return;
+                }
+                service = new NettyServiceStub(c, Silica.getGlobalConfig(Config.KEY_VERSION) + clazz.getName(),
+                        callTimeoutMsec);
+            }
+            LOG.info("Cancel the job: {}", token);
+
+            service.cancel(token);
+
+        } catch (Exception e) {
+
+            throw new ServiceException("Could not cancel the job.", e);
+        }
+    }
+
+    @Override
+    public LoadReport heartbeat(Class<? extends Service> clazz) throws ServiceException {
+
+        try {
+            Service service = getLocalService(clazz);
+            if (service == null) {
+                NettyConnection c = connection;
+                if (c == null || !c.isActive()) {
+                    throw new ConnectException("The server is not connected.");
+                }
+                service = new NettyServiceStub(c, Silica.getGlobalConfig(Config.KEY_VERSION) + clazz.getName(),
+                        callTimeoutMsec);
+            }
+            return service.heartbeat();
+
+        } catch (Exception e) {
+
+            throw new ServiceException("Could not get the load of the server.", e);
+        }
+    }
+
+    private Service prepare(Class<? extends Service> clazz, List<? extends Job<?>> jobs) throws Exception {
+
+        Service local = getLocalService(clazz);
+        if (local != null) {
+            return local;
+        }
+        Service service = new NettyServiceStub(connect(), Silica.getGlobalConfig(Config.KEY_VERSION) + clazz.getName(),
+                callTimeoutMsec);
+
+        deployResources(service, jobs);
+        return service;
+    }
+
+    /**
+     * The connection to the server. The server is activated and the service is bound on the first connection.
+     */
+    private NettyConnection connect() throws Exception {
+
+        NettyConnection c = connection;
+        if (c != null && c.isActive()) {
+            return c;
+        }
+        lock.lock();
+        try {
+            c = connection;
+            if (c != null && c.isActive()) {
+                return c;
+            }
+            String address = getAddress();
+
+            for (int tryCnt = 0;;) {
+                try {
+                    c = NettyConnection.open(address, getPort());
+                    connection = c;
+                    connected = true;
+
+                    LOG.debug("Connected to the Netty service on {}.", address);
+                    return c;
+
+                } catch (ConnectException e) {
+                    if (connected) {
+                        // The server has gone. The proxy retries the job on another server, and the next job to
+                        // this server binds the service again.
+                        connected = false;
+                        throw e;
+                    }
+                    if (tryCnt >= MAX_RETRY) {
+                        throw e;
+                    }
+                    if (tryCnt == 0) {
+                        activate();
+                        bind(getServerContext().getService());
+                    }
+                    LOG.info("Retry to connect the Netty service on {}.", address);
+                    tryCnt++;
+                    if (getServerContext().isRemote()) {
+                        Thread.sleep(1500 * tryCnt);
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Connect to the service again if the connection has been lost, but neither activate the server nor bind the
+     * service.
+     */
+    @Override
+    public boolean ping() {
+
+        if (super.ping()) {
+            return true;
+        }
+        if (getServerContext() == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            if (isActive()) {
+                return true;
+            }
+            connection = NettyConnection.open(getAddress(), getPort());
+            connected = true;
+            return true;
+
+        } catch (Exception e) {
+            LOG.debug("Could not connect to the Netty service.", e);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String getAddress() {
+        return getServerContext().isRemote()
+                ? getServerContext().getPublicAddress()
+                : getServerContext().getInternalAddress();
+    }
+
+    private int getPort() {
+        int port = getServerContext().getNettyListenPort();
+        return port > 0 ? port : DEFAULT_PORT;
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server.netty;
+
+import java.io.Serializable;
+import java.rmi.NotBoundException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.silica.job.Job;
+import com.silica.job.JobToken;
+import com.silica.resource.Resource;
+import com.silica.rpc.server.netty.NettyRequest.Method;
+import com.silica.service.Service;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+
+/**
+ * Calls the bound services on the requests of the clients.
+ * <p>
+ * A job blocks until it finishes, so the requests run on the executor rather than on the I/O thread, and the
+ * responses are written in the order the jobs finish. A heartbeat is answered on the I/O thread, so that it reports
+ * the requests waiting for the executor instead of waiting behind them.
+ * </p>
+ * <p>
+ * The service is shut down after the response of the request which has unbound the last service.
+ * </p>
+ */
+@Sharable
+final class NettyServiceHandler extends SimpleChannelInboundHandler<NettyRequest> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NettyServiceHandler.class);
+
+    private final Map<String, Service> services;
+    private final Executor executor;
+    private final Runnable shutdown;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    NettyServiceHandler(Map<String, Service> services, Executor executor, Runnable shutdown) {
+        this.services = services;
+        this.executor = executor;
+        this.shutdown = shutdown;
+    }
+
+    @Override
+    protected void channelRead0(final ChannelHandlerContext ctx, final NettyRequest request) {
+
+        if (request.getMethod() == Method.HEARTBEAT) {
+            respond(ctx, invoke(request), true);
+            return;
+        }
+        if (request.getMethod() == Method.UNBIND || request.getMethod() == Method.SHUTDOWN) {
+            ctx.writeAndFlush(unbind(request)).addListener(new ChannelFutureListener() {
+
+                @Override
+                public void operationComplete(ChannelFuture future) {
+                    if (services.isEmpty()) {
+                        // Not on the I/O thread, which the shutdown waits for.
+                        new Thread(shutdown, "silica-netty-shutdown").start();
+                    }
+                }
+            });
+            return;
+        }
+        queued.incrementAndGet();
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                queued.decrementAndGet();
+                respond(ctx, invoke(request), true);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private NettyResponse invoke(NettyRequest request) {
+
+        Object[] args = request.getArguments();
+        try {
+            Service service = services.get(request.getServiceName());
+            if (service == null) {
+                throw new NotBoundException(request.getServiceName());
+            }
+
+            Object result = null;
+            switch (request.getMethod()) {
+            case DEPLOY_RESOURCES:
+                service.deployResources((String) args[0], (Resource[]) args[1]);
+                break;
+            case RESOURCE_DIGESTS:
+                result = new HashMap<String, String>(service.getResourceDigests((String) args[0], (String[]) args[1]));
+                break;
+            case EXECUTE:
+                Job<Serializable> job = (Job<Serializable>) args[0];
+                JobToken token = (JobToken) args[1];
+                result = token == null ? service.execute(job) : service.execute(job, token);
+                break;
+            case EXECUTE_BATCH:
+                List<Serializable> results = service.executeBatch((List<Job<Serializable>>) args[0], (JobToken) args[1]);
+                result = new ArrayList<Serializable>(results);
+                break;
+            case CANCEL:
+                service.cancel((JobToken) args[0]);
+                break;
+            case HEARTBEAT:
+                result = service.heartbeat().withQueuedJobs(queued.get());
+                break;
+            default:
+                throw new UnsupportedOperationException(request.getMethod().name());
+            }
+            return new NettyResponse(request.getId(), result, null);
+
+        } catch (Exception e) {
+            return new NettyResponse(request.getId(), null, e);
+        }
+    }
+
+    private NettyResponse unbind(NettyRequest request) {
+
+        if (request.getMethod() == Method.SHUTDOWN) {
+            LOG.info("Shut down the Netty service on the request.");
+            services.clear();
+
+        } else if (services.remove(request.getServiceName()) == null) {
+            return new NettyResponse(request.getId(), null, new NotBoundException(request.getServiceName()));
+
+        } else {
+            LOG.info("Netty service bind name:{} has been unbinded.", request.getServiceName());
+        }
+        return new NettyResponse(request.getId(), null, null);
+    }
+
+    private void respond(final ChannelHandlerContext ctx, final NettyResponse response, final boolean retry) {
+
+        ctx.writeAndFlush(response).addListener(new ChannelFutureListener() {
+
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (future.isSuccess() || !retry || !ctx.channel().isActive()) {
+                    return;
+                }
+                // e.g. The result is not serializable. Tell the client the reason instead of leaving it waiting.
+                LOG.warn("Could not write the response of the request id:{}.", response.getId(), future.cause());
+                respond(ctx, new NettyResponse(response.getId(), null,
+                        new RemoteException("Could not write the response: " + future.cause())), false);
+            }
+        });
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+
+        LOG.warn("Close the connection from {}.", ctx.channel().remoteAddress(), cause);
+        ctx.close();
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server.netty;
+
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+
+import com.silica.job.Job;
+import com.silica.job.JobToken;
+import com.silica.resource.Resource;
+import com.silica.rpc.server.netty.NettyRequest.Method;
+import com.silica.service.LoadReport;
+import com.silica.service.Service;
+
+/**
+ * A client side {@link Service} which calls the service bound on a {@link NettyServer}.
+ * <p>
+ * A job waits for its response up to its deadline, and a little more for the service to report the expiry. A job
+ * without deadline waits as long as it runs. The other calls wait up to the call timeout.
+ * </p>
+ */
+final class NettyServiceStub implements Service {
+
+    private static final long serialVersionUID = -3128407351904862210L;
+
+    private static final long DEADLINE_GRACE_MSEC = 1000L;
+
+    private final transient NettyConnection connection;
+    private final String name;
+    private final long callTimeoutMsec;
+
+    /**
+     * @param callTimeoutMsec
+     *            the time to wait for the response of a call other than a job, or zero or less for no timeout
+     */
+    NettyServiceStub(NettyConnection connection, String name, long callTimeoutMsec) {
+        this.connection = connection;
+        this.name = name;
+        this.callTimeoutMsec = callTimeoutMsec;
+    }
+
+    private static long timeoutOf(JobToken token) {
+        if (token == null || token.getDeadline() <= 0) {
+            return 0L;
+        }
+        return Math.max(token.getRemainingMsec(), 0L) + DEADLINE_GRACE_MSEC;
+    }
+
+    @Override
+    public void deployResources(String destinationDirectoryOnTheTargetServer, Resource... resources)
+            throws RemoteException {
+
+        connection.call(new NettyRequest(name, Method.DEPLOY_RESOURCES, destinationDirectoryOnTheTargetServer, resources),
+                callTimeoutMsec);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<String, String> getResourceDigests(String destinationDirectoryOnTheTargetServer, String... names)
+            throws RemoteException {
+
+        return (Map<String, String>) connection.call(new NettyRequest(name, Method.RESOURCE_DIGESTS,
+                destinationDirectoryOnTheTargetServer, names), callTimeoutMsec);
+    }
+
+    @Override
+    public <R extends Serializable> R execute(Job<R> job) throws RemoteException {
+
+        return execute(job, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <R extends Serializable> R execute(Job<R> job, JobToken token) throws RemoteException {
+
+        return (R) connection.call(new NettyRequest(name, Method.EXECUTE, job, token), timeoutOf(token));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <R extends Serializable> List<R> executeBatch(List<Job<R>> jobs, JobToken token) throws RemoteException {
+
+        return (List<R>) connection.call(new NettyRequest(name, Method.EXECUTE_BATCH, jobs, token), timeoutOf(token));
+    }
+
+    @Override
+    public void cancel(JobToken token) throws RemoteException {
+
+        connection.call(new NettyRequest(name, Method.CANCEL, token), callTimeoutMsec);
+    }
+
+    @Override
+    public LoadReport heartbeat() throws RemoteException {
+
+        return (LoadReport) connection.call(new NettyRequest(name, Method.HEARTBEAT), callTimeoutMsec);
+    }
+}
@@ -15,17 +15,24 @@
  */
 package com.silica.rpc.server.rmi;
 
-import java.io.IOException;
 import java.io.Serializable;
 import java.rmi.AccessException;
 import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
 import java.rmi.NotBoundException;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.rmi.UnknownHostException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,12 +40,11 @@ import org.slf4j.LoggerFactory;
 import com.silica.Config;
 import com.silica.Silica;
 import com.silica.job.Job;
-import com.silica.resource.Resource;
-import com.silica.resource.ResourceLoader;
-import com.silica.rpc.Resources;
+import com.silica.job.JobToken;
 import com.silica.rpc.server.SecurePipedServer;
 import com.silica.rpc.server.ServerContext;
 import com.silica.rpc.server.ServerException;
+import com.silica.service.LoadReport;
 import com.silica.service.Service;
 import com.silica.service.ServiceException;
 
@@ -50,6 +56,14 @@ public class DefaultServer extends SecurePipedServer {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultServer.class);
     private static final int MAX_RETRY = 3;
 
+    /*
+     * Not a monitor, so that a job waiting for the activation does not pin the carrier of a virtual thread.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final ConcurrentMap<String, Service> stubs = new ConcurrentHashMap<String, Service>();
+    private volatile Registry registry;
+
     public DefaultServer(ServerContext context) {
         super(context);
     }
@@ -104,6 +118,7 @@ public class DefaultServer extends SecurePipedServer {
             name = version + name;
 
             getRegistry().unbind(name);
+            stubs.remove(name);
 
         } catch (Exception e) {
 
@@ -160,6 +175,7 @@ public class DefaultServer extends SecurePipedServer {
                 LOG.debug("Server deactivation command is not defined.");
             }
         } finally {
+            invalidate();
             try {
                 shutdownRMIRegistry();
             } finally {
@@ -170,94 +186,171 @@ public class DefaultServer extends SecurePipedServer {
 
     @Override
     public <R extends Serializable> R execute(Class<? extends Service> clazz,
-            Job<R> job) throws ServiceException {
-
-        String name = Silica.getGlobalConfig(Config.KEY_VERSION) + clazz.getName();
+            Job<R> job, JobToken token) throws ServiceException {
 
         try {
-            ensureActive();
+            Service service = prepare(clazz, Collections.singletonList(job));
 
-            Registry registry = getRegistry();
-            Service service = lookup(registry, name, 0);
+            LOG.info("Execute the job: {}", job.getClass());
 
-            LOG.debug("Succeeded RMI Object lookup:{}.", name);
+            return service.execute(job, token);
 
-            Resource[] resources = getResources(job);
+        } catch (Exception e) {
 
-            if (resources != null) {
-                LOG.info("Deploy resources");
-                try {
+            invalidateOnConnectionError(e);
+            throw new ServiceException("Could not execute the service.", e);
+        }
+    }
 
-                    service.deployResources(getServerContext().getResourceDirectory(), resources);
+    @Override
+    public <R extends Serializable> List<R> executeBatch(Class<? extends Service> clazz,
+            List<Job<R>> jobs, JobToken token) throws ServiceException {
 
-                } finally {
+        try {
+            Service service = prepare(clazz, jobs);
 
-                    for (Resource resource : resources) {
-                        resource.close();
-                    }
-                }
-            }
-            LOG.info("Execute the job: {}", job.getClass());
+            LOG.info("Execute {} jobs in a batch.", jobs.size());
 
-            return service.execute(job);
+            return service.executeBatch(jobs, token);
 
         } catch (Exception e) {
 
+            invalidateOnConnectionError(e);
             throw new ServiceException("Could not execute the service.", e);
         }
     }
 
-    private synchronized Service lookup(Registry registry, String serviceName, int tryCnt)
-            throws InterruptedException, AccessException, RemoteException, ServerException {
+    @Override
+    public void cancel(Class<? extends Service> clazz, JobToken token) throws ServiceException {
+
+        String name = Silica.getGlobalConfig(Config.KEY_VERSION) + clazz.getName();
 
-        boolean canRetry = false;
-        Exception tmp;
         try {
-            return (Service) registry.lookup(serviceName);
+            Service service = getLocalService(clazz);
+            if (service == null) {
+                service = stubs.get(name);
+            }
+            if (service == null) {
+                service = (Service) getRegistry().lookup(name);
+            }
 
-        } catch (NotBoundException e) {
-            canRetry = true;
-            tmp = e;
-            bind(getServerContext().getService());
+            LOG.info("Cancel the job: {}", token);
 
-        } catch (ConnectException e) {
-            canRetry = true;
-            tmp = e;
+            service.cancel(token);
+
+        } catch (Exception e) {
+
+            invalidateOnConnectionError(e);
+            throw new ServiceException("Could not cancel the job.", e);
         }
-        if (canRetry) {
-            if (tryCnt < MAX_RETRY) {
-                LOG.info("Retry to lookup service:{}.", serviceName);
-                Thread.sleep(1500 * (++tryCnt));
-                return lookup(registry, serviceName, tryCnt);
-            } else {
-                throw new ServiceException("Could not lookup the service.", tmp);
+    }
+
+    /**
+     * Ask the service for the load. The server is neither activated nor looked up for it: only a cached stub is used.
+     */
+    @Override
+    public LoadReport heartbeat(Class<? extends Service> clazz) throws ServiceException {
+
+        try {
+            Service service = getLocalService(clazz);
+            if (service == null) {
+                service = stubs.get(Silica.getGlobalConfig(Config.KEY_VERSION) + clazz.getName());
+                if (service == null) {
+                    throw new ConnectException("The service has not been looked up.");
+                }
             }
+            return service.heartbeat();
+
+        } catch (Exception e) {
+
+            invalidateOnConnectionError(e);
+            throw new ServiceException("Could not get the load of the server.", e);
         }
-        throw new IllegalStateException("unknown state");
     }
 
-    private Resource[] getResources(Job<?> job) throws IOException {
+    /**
+     * Lookup the service and deploy resources of the jobs, once for each job class. A job routed to the local server
+     * needs neither with the local fast path.
+     */
+    private Service prepare(Class<? extends Service> clazz, List<? extends Job<?>> jobs) throws Exception {
+
+        Service local = getLocalService(clazz);
+        if (local != null) {
+            return local;
+        }
+        Service service = getService(Silica.getGlobalConfig(Config.KEY_VERSION) + clazz.getName());
+
+        deployResources(service, jobs);
+        return service;
+    }
+
+    /**
+     * A stub of the service. The stub is looked up once and cached until a connection error.
+     */
+    private Service getService(String name) throws Exception {
 
-        Resources res = null;
+        Service service = stubs.get(name);
+        if (service != null) {
+            return service;
+        }
+        lock.lock();
         try {
+            service = stubs.get(name);
+            if (service != null) {
+                return service;
+            }
+            ensureActive();
 
-            res = job.getClass().getMethod("execute").getAnnotation(Resources.class);
+            service = lookup(getRegistry(), name, 0);
+            stubs.put(name, service);
 
-        } catch (Exception e) {
-            throw new RuntimeException("Job must have execute method", e);
+            LOG.debug("Succeeded RMI Object lookup:{}.", name);
+            return service;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        if (res == null) {
-            return null;
+    private void invalidateOnConnectionError(Exception e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException
+                    || cause instanceof ConnectIOException
+                    || cause instanceof NoSuchObjectException
+                    || cause instanceof UnknownHostException) {
+                LOG.info("Forget the RMI Objects of the server [{}]: {}", getServerContext().getPublicAddress(), cause.toString());
+                invalidate();
+                return;
+            }
         }
+    }
 
-        String paths = res.path();
+    private void invalidate() {
+        stubs.clear();
+        registry = null;
+    }
 
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("resource paths to execute the job {}: {}", job.getClass(), paths);
-        }
+    private Service lookup(Registry registry, String serviceName, int tryCnt)
+            throws InterruptedException, AccessException, RemoteException, ServerException {
 
-        return ResourceLoader.defineResources(paths);
+        lock.lock();
+        try {
+            try {
+                return (Service) registry.lookup(serviceName);
+
+            } catch (NotBoundException e) {
+                // A ConnectException is not retried here. The proxy retries the job on another server instead.
+                if (tryCnt < MAX_RETRY) {
+                    bind(getServerContext().getService());
+                    LOG.info("Retry to lookup service:{}.", serviceName);
+                    Thread.sleep(1500 * (++tryCnt));
+                    return lookup(registry, serviceName, tryCnt);
+                } else {
+                    throw new ServiceException("Could not lookup the service.", e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
@@ -277,16 +370,21 @@ public class DefaultServer extends SecurePipedServer {
         } catch (NotBoundException e) {
             return true;
         } catch (Exception e) {
-            LOG.error(e.toString(), e);
+            LOG.warn("Could not find a active RMI server: {}", e.toString());
             return false;
         }
     }
 
-    private synchronized void ensureActive() throws ServerException {
-        if (isActive()) {
-            return;
+    private void ensureActive() throws ServerException {
+        lock.lock();
+        try {
+            if (isActive()) {
+                return;
+            }
+            activate();
+        } finally {
+            lock.unlock();
         }
-        activate();
     }
 
     private void ensureRMIRegistry() throws ServerException {
@@ -335,6 +433,18 @@ public class DefaultServer extends SecurePipedServer {
 
     private Registry getRegistry() throws RemoteException {
 
+        Registry r = registry;
+        if (r == null) {
+            r = registry = locateRegistry();
+        }
+        return r;
+    }
+
+    /**
+     * Locate the registry of the server. It is located again after a connection error.
+     */
+    protected Registry locateRegistry() throws RemoteException {
+
         String address = getServerContext().isRemote()
                 ? getServerContext().getPublicAddress()
                 : getServerContext().getInternalAddress();
@@ -0,0 +1,96 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.service;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+/**
+ * A snapshot of the load of a server, which the server returns on a heartbeat.
+ */
+public final class LoadReport implements Serializable {
+
+    private static final long serialVersionUID = -6209131560786430812L;
+
+    private final int queuedJobs;
+    private final int activeJobs;
+    private final double cpuLoad;
+    private final long freeHeapBytes;
+
+    public LoadReport(int queuedJobs, int activeJobs, double cpuLoad, long freeHeapBytes) {
+        this.queuedJobs = queuedJobs;
+        this.activeJobs = activeJobs;
+        this.cpuLoad = cpuLoad;
+        this.freeHeapBytes = freeHeapBytes;
+    }
+
+    /**
+     * Take a snapshot of this JVM.
+     */
+    public static LoadReport current(int queuedJobs, int activeJobs) {
+
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        double loadAverage = os.getSystemLoadAverage();
+        double cpuLoad = loadAverage < 0 ? -1 : loadAverage / os.getAvailableProcessors();
+
+        Runtime runtime = Runtime.getRuntime();
+        long freeHeapBytes = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+
+        return new LoadReport(queuedJobs, activeJobs, cpuLoad, freeHeapBytes);
+    }
+
+    /**
+     * @return a copy of the report with the number of the jobs waiting for a thread
+     */
+    public LoadReport withQueuedJobs(int queuedJobs) {
+        return new LoadReport(queuedJobs, activeJobs, cpuLoad, freeHeapBytes);
+    }
+
+    /**
+     * @return a number of the jobs waiting for a thread of the server
+     */
+    public int getQueuedJobs() {
+        return queuedJobs;
+    }
+
+    /**
+     * @return a number of the jobs running on the server, from all the clients
+     */
+    public int getActiveJobs() {
+        return activeJobs;
+    }
+
+    /**
+     * @return the system load average per processor, or -1 if it is not available
+     */
+    public double getCpuLoad() {
+        return cpuLoad;
+    }
+
+    /**
+     * @return bytes of the heap which the server can still allocate
+     */
+    public long getFreeHeapBytes() {
+        return freeHeapBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadReport [queuedJobs=" + queuedJobs + ", activeJobs=" + activeJobs + ", cpuLoad=" + cpuLoad
+                + ", freeHeapBytes=" + freeHeapBytes + "]";
+    }
+}
@@ -18,8 +18,11 @@ package com.silica.service;
 import java.io.Serializable;
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
 
 import com.silica.job.Job;
+import com.silica.job.JobToken;
 import com.silica.resource.Resource;
 
 /**
@@ -32,5 +35,36 @@ public interface Service extends Remote, Serializable {
      */
     public void deployResources(String destinationDirectoryOnTheTargetServer, Resource... resources) throws RemoteException;
 
+    /**
+     * Get the digests of the resources deployed in the destination directory.
+     * 
+     * @return the digests by name, except the resources which have not been deployed
+     */
+    public Map<String, String> getResourceDigests(String destinationDirectoryOnTheTargetServer, String... names) throws RemoteException;
+
     public <R extends Serializable> R execute(Job<R> job) throws RemoteException;
+
+    /**
+     * Execute the job unless the deadline of the token has passed. The job is interrupted when the deadline passes or
+     * the token is cancelled.
+     */
+    public <R extends Serializable> R execute(Job<R> job, JobToken token) throws RemoteException;
+
+    /**
+     * Execute the jobs in a single call.
+     * 
+     * @return results of the jobs in the same order as the jobs
+     * @see #execute(Job, JobToken)
+     */
+    public <R extends Serializable> List<R> executeBatch(List<Job<R>> jobs, JobToken token) throws RemoteException;
+
+    /**
+     * Interrupt the job running with the token.
+     */
+    public void cancel(JobToken token) throws RemoteException;
+
+    /**
+     * Report the current load of the server.
+     */
+    public LoadReport heartbeat() throws RemoteException;
 }
@@ -19,26 +19,74 @@ import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Test;
 
+import com.silica.job.Idempotent;
 import com.silica.job.Job;
 import com.silica.job.JobException;
+import com.silica.job.JobFactory;
+import com.silica.job.JobToken;
+import com.silica.job.Reducer;
+import com.silica.rpc.DefaultRpcService;
 import com.silica.rpc.ProxyService;
+import com.silica.rpc.server.ProbeJob;
+import com.silica.rpc.server.RoundRobinServerSelector;
+import com.silica.rpc.server.Server;
+import com.silica.rpc.server.ServerContext;
 import com.silica.rpc.server.ServerSelector;
+import com.silica.rpc.server.ServerSelectorTest;
+import com.silica.rpc.server.StubServer;
+import com.silica.service.ServiceException;
 
 public class SilicaTest {
 
+    private static final long SLOW_MSEC = 20L;
+
+    private static final Reducer<Integer, Integer> SUM = new Reducer<Integer, Integer>() {
+
+        @Override
+        public Integer reduce(Integer accumulation, Integer result) {
+            return accumulation + result;
+        }
+    };
+
     @AfterClass
     public static void tearDownAfterClass() throws Exception {
 
         ServerSelector.createSelector().setDisactiveAll();
     }
 
+    @After
+    public void tearDown() throws Exception {
+
+        ServerSelectorTest.restore();
+    }
+
     @Test
     public void test_boot() throws Exception {
 
@@ -82,6 +130,480 @@ public class SilicaTest {
         assertTrue(System.currentTimeMillis() - start < 10000);
     }
 
+    @Test
+    public void test_executeAll() throws Exception {
+
+        System.setProperty("SILICA_CONF", "example.properties");
+        Silica.boot(new String[] { "-s", "base.dir=src/test/resources/basedir" });
+
+        List<Integer> batches = new CopyOnWriteArrayList<Integer>();
+        ServerSelector selector = ServerSelectorTest.create(new RoundRobinServerSelector(),
+                StubServer.create(new DefaultRpcService(), batches),
+                StubServer.create(new DefaultRpcService(), batches),
+                StubServer.create(new DefaultRpcService(), batches));
+
+        List<SquareJob> jobs = new ArrayList<SquareJob>();
+        for (int i = 0; i < 10; i++) {
+            jobs.add(new SquareJob(i));
+        }
+        List<Integer> results = Silica.executeAll(selector, jobs, 10000L);
+
+        // One batch for each server, and the results in the order of the jobs.
+        assertThat(batches.size(), is(3));
+        assertThat(batches.get(0) + batches.get(1) + batches.get(2), is(10));
+        for (int i = 0; i < 10; i++) {
+            assertThat(results.get(i), is(i * i));
+        }
+    }
+
+    @Test(expected = ServiceException.class)
+    public void test_executeAll_failure() throws Exception {
+
+        System.setProperty("SILICA_CONF", "example.properties");
+        Silica.boot(new String[] { "-s", "base.dir=src/test/resources/basedir" });
+
+        List<Integer> batches = new CopyOnWriteArrayList<Integer>();
+        ServerSelector selector = ServerSelectorTest.create(new RoundRobinServerSelector(),
+                StubServer.create(new DefaultRpcService(), batches),
+                StubServer.create(new DefaultRpcService(), batches));
+
+        Silica.executeAll(selector, Arrays.asList(new SquareJob(1), new SquareJob(-1), new SquareJob(2)), 10000L);
+    }
+
+    @Test
+    public void test_createExecutorPool() throws Exception {
+
+        assertThat(Silica.createExecutorPool(null), instanceOf(ForkJoinPool.class));
+        assertThat(Silica.createExecutorPool(""), instanceOf(ForkJoinPool.class));
+        assertThat(Silica.createExecutorPool("work-stealing"), instanceOf(ForkJoinPool.class));
+        // An invalid value falls back.
+        assertThat(Silica.createExecutorPool("virtaul"), instanceOf(ForkJoinPool.class));
+    }
+
+    @Test
+    public void test_createExecutorPool_virtual() throws Exception {
+
+        Method isVirtual;
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            isVirtual = Thread.class.getMethod("isVirtual");
+        } catch (NoSuchMethodException e) {
+            isVirtual = null;
+        }
+
+        ExecutorService pool = Silica.createExecutorPool("virtual");
+        try {
+            if (isVirtual == null) {
+                // Falls back without virtual threads.
+                assertThat(pool, instanceOf(ForkJoinPool.class));
+            } else {
+                final Method method = isVirtual;
+                assertThat(pool.submit(new Callable<Object>() {
+
+                    @Override
+                    public Object call() throws Exception {
+                        return method.invoke(Thread.currentThread());
+                    }
+                }).get(10, TimeUnit.SECONDS), is((Object) Boolean.TRUE));
+            }
+            // The pool runs the jobs either way.
+            assertThat(pool.submit(new Callable<String>() {
+
+                @Override
+                public String call() {
+                    return "OK";
+                }
+            }).get(10, TimeUnit.SECONDS), is("OK"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void test_warmUp() throws Exception {
+
+        CountDownLatch probing = new CountDownLatch(2);
+        ServerSelectorTest.replace(new RoundRobinServerSelector(), ServerSelectorTest.warming(probing, true),
+                ServerSelectorTest.warming(probing, false));
+
+        Map<String, Boolean> ready = Silica.warmUp();
+
+        // The failed server does not abort the warm up of the other.
+        assertThat(ready.get("server0"), is(false));
+        assertThat(ready.get("server1"), is(true));
+    }
+
+    @Test
+    public void test_submit() throws Exception {
+
+        boot();
+        ServerSelectorTest.replace(new RoundRobinServerSelector(), local("a").build());
+
+        CompletableFuture<Integer> future = Silica.submit(new SquareJob(3), 10000L);
+        assertThat(future.get(10, TimeUnit.SECONDS), is(9));
+    }
+
+    @Test
+    public void test_submit_failure() throws Exception {
+
+        boot();
+        ServerSelectorTest.replace(new RoundRobinServerSelector(), local("a").build());
+
+        CompletableFuture<Integer> future = Silica.submit(new SquareJob(-1), 10000L);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ServiceException.class));
+        }
+        assertTrue(future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void test_submit_timeout() throws Exception {
+
+        boot();
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        ServerSelectorTest.replace(new RoundRobinServerSelector(), server("a", new StubServer.Handler() {
+
+            @Override
+            public Object handle(Object[] args) throws Throwable {
+                // Returns late, not to keep the only thread of the pool on a single processor.
+                cancelled.await(1, TimeUnit.SECONDS);
+                return 0;
+            }
+        }).on("cancel", new StubServer.Handler() {
+
+            @Override
+            public Object handle(Object[] args) {
+                cancelled.countDown();
+                return null;
+            }
+        }).build());
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<Integer> future = Silica.submit(new SquareJob(3), 200L);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ServiceException.class));
+            assertThat(e.getCause().getCause(), instanceOf(TimeoutException.class));
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        // The job is cancelled on the server.
+        assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_executeAsync_withoutTimeout() throws Exception {
+
+        boot();
+        final List<JobToken> tokens = new CopyOnWriteArrayList<JobToken>();
+        final DefaultRpcService service = new DefaultRpcService();
+        ServerSelectorTest.replace(new RoundRobinServerSelector(), server("a", new StubServer.Handler() {
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public Object handle(Object[] args) throws Throwable {
+                tokens.add((JobToken) args[2]);
+                return service.execute((Job<Integer>) args[1], (JobToken) args[2]);
+            }
+        }).build());
+
+        assertThat(Silica.executeAsync(new SquareJob(4)).get(10, TimeUnit.SECONDS), is(16));
+        try {
+            Silica.executeAsync(new SquareJob(-1)).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ServiceException.class));
+        }
+        // The jobs have no deadline.
+        assertThat(tokens.size(), is(2));
+        for (JobToken token : tokens) {
+            assertThat(token.getDeadline(), is(0L));
+        }
+    }
+
+    @Test
+    public void test_submit_hedged() throws Exception {
+
+        boot("job.hedge.percentile=50");
+        final List<String> dispatched = new CopyOnWriteArrayList<String>();
+        final List<Long> dispatchedAt = new CopyOnWriteArrayList<Long>();
+        final List<JobToken> tokens = new CopyOnWriteArrayList<JobToken>();
+        final List<JobToken> cancelled = new CopyOnWriteArrayList<JobToken>();
+        final CountDownLatch released = new CountDownLatch(1);
+        ServerSelectorTest.replace(new RoundRobinServerSelector(),
+                slowServer("a", 5000L, dispatched, dispatchedAt, tokens, cancelled, released),
+                slowServer("b", 5000L, dispatched, dispatchedAt, tokens, cancelled, released));
+
+        // The latencies of the job to decide the delay.
+        for (int i = 0; i < 100; i++) {
+            Silica.submit(new IdempotentNameJob(false), 10000L).get(10, TimeUnit.SECONDS);
+        }
+        dispatched.clear();
+        dispatchedAt.clear();
+        tokens.clear();
+
+        try {
+            String winner = Silica.submit(new IdempotentNameJob(true), 10000L).get(5, TimeUnit.SECONDS);
+
+            // The slow server is the first one, and the duplicate is sent to the other after the delay.
+            assertThat(dispatched.size(), is(2));
+            assertThat(winner, is(dispatched.get(1)));
+            assertThat(winner, not(dispatched.get(0)));
+            assertTrue(dispatchedAt.get(1) - dispatchedAt.get(0) >= SLOW_MSEC / 2);
+
+            // The loser is cancelled.
+            for (int i = 0; i < 50 && !cancelled.contains(tokens.get(0)); i++) {
+                Thread.sleep(100);
+            }
+            assertThat(cancelled.contains(tokens.get(0)), is(true));
+            assertThat(cancelled.contains(tokens.get(1)), is(false));
+        } finally {
+            released.countDown();
+        }
+    }
+
+    @Test
+    public void test_submit_notHedged() throws Exception {
+
+        boot("job.hedge.percentile=50");
+        final List<String> dispatched = new CopyOnWriteArrayList<String>();
+        final List<Long> dispatchedAt = new CopyOnWriteArrayList<Long>();
+        final List<JobToken> tokens = new CopyOnWriteArrayList<JobToken>();
+        final List<JobToken> cancelled = new CopyOnWriteArrayList<JobToken>();
+        ServerSelectorTest.replace(new RoundRobinServerSelector(),
+                slowServer("a", 500L, dispatched, dispatchedAt, tokens, cancelled, new CountDownLatch(1)),
+                slowServer("b", 500L, dispatched, dispatchedAt, tokens, cancelled, new CountDownLatch(1)));
+
+        for (int i = 0; i < 100; i++) {
+            Silica.submit(new NameJob(false), 10000L).get(10, TimeUnit.SECONDS);
+        }
+        dispatched.clear();
+        tokens.clear();
+
+        // The job which is not idempotent waits for the slow server.
+        String result = Silica.submit(new NameJob(true), 10000L).get(10, TimeUnit.SECONDS);
+        assertThat(dispatched, is(Arrays.asList(result)));
+        assertThat(cancelled.contains(tokens.get(0)), is(false));
+    }
+
+    @Test
+    public void test_scatterGather() throws Exception {
+
+        boot();
+        List<String> executed = new CopyOnWriteArrayList<String>();
+        Server inactive = recording("d", executed).build();
+        ServerSelectorTest.replace(new RoundRobinServerSelector(), recording("a", executed).build(),
+                recording("b", executed).build(), recording("c", executed).build(), inactive);
+        inactive.getServerContext().setEnable(false);
+
+        final List<ServerContext> contexts = new CopyOnWriteArrayList<ServerContext>();
+        int sum = Silica.scatterGather(new JobFactory<Integer>() {
+
+            @Override
+            public Job<Integer> create(ServerContext server) {
+                contexts.add(server);
+                return new SquareJob(contexts.size());
+            }
+        }, 0, SUM);
+
+        // A job for each active server, and every result is folded.
+        assertThat(contexts.size(), is(3));
+        assertThat(new HashSet<String>(executed), is(new HashSet<String>(Arrays.asList("a", "b", "c"))));
+        assertThat(executed.size(), is(3));
+        assertThat(sum, is(1 + 4 + 9));
+    }
+
+    @Test
+    public void test_scatterGather_failure() throws Exception {
+
+        boot();
+        List<String> executed = new CopyOnWriteArrayList<String>();
+        ServerSelectorTest.replace(new RoundRobinServerSelector(), recording("a", executed).build(),
+                recording("b", executed).build(), recording("c", executed).build());
+
+        final AtomicInteger created = new AtomicInteger();
+        try {
+            Silica.scatterGather(new JobFactory<Integer>() {
+
+                @Override
+                public Job<Integer> create(ServerContext server) {
+                    // The job of the second server fails.
+                    return new SquareJob(created.incrementAndGet() == 2 ? -1 : 1);
+                }
+            }, 0, SUM, 10000L);
+            fail();
+        } catch (ServiceException e) {
+            assertThat(causedBy(e, JobException.class), is(true));
+        }
+    }
+
+    @Test
+    public void test_scatterGather_timeout() throws Exception {
+
+        boot();
+        List<String> executed = new CopyOnWriteArrayList<String>();
+        ServerSelectorTest.replace(new RoundRobinServerSelector(), recording("a", executed).build(),
+                server("b", new StubServer.Handler() {
+
+                    @Override
+                    public Object handle(Object[] args) throws Throwable {
+                        await(new CountDownLatch(1), 5000L);
+                        return 0;
+                    }
+                }).build());
+
+        long start = System.currentTimeMillis();
+        try {
+            Silica.scatterGather(new JobFactory<Integer>() {
+
+                @Override
+                public Job<Integer> create(ServerContext server) {
+                    return new SquareJob(1);
+                }
+            }, 0, SUM, 300L);
+            fail();
+        } catch (ServiceException e) {
+            // Either the job or the gathering times out first.
+            assertThat(causedBy(e, TimeoutException.class), is(true));
+        }
+        assertTrue(System.currentTimeMillis() - start < 3000);
+    }
+
+    private static boolean causedBy(Throwable e, Class<? extends Throwable> type) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void boot(String... props) {
+        System.setProperty("SILICA_CONF", "example.properties");
+        String[] args = new String[2 + props.length * 2];
+        args[0] = "-s";
+        args[1] = "base.dir=src/test/resources/basedir";
+        for (int i = 0; i < props.length; i++) {
+            args[2 + i * 2] = "-s";
+            args[3 + i * 2] = props[i];
+        }
+        Silica.boot(args);
+    }
+
+    /**
+     * A server which joins by a probe job, and runs the other jobs by the handler.
+     */
+    private static StubServer.Builder server(String name, final StubServer.Handler execute) throws IOException {
+        return StubServer.builder().name(name).context(new ServerContext("localhost")).returns("cancel", null)
+                .on("execute", new StubServer.Handler() {
+
+                    @Override
+                    public Object handle(Object[] args) throws Throwable {
+                        if (args[1] instanceof ProbeJob) {
+                            return Boolean.TRUE;
+                        }
+                        return execute.handle(args);
+                    }
+                });
+    }
+
+    /**
+     * A server which runs the jobs in this process.
+     */
+    private static StubServer.Builder local(String name) throws IOException {
+        return StubServer.builder().name(name).context(new ServerContext("localhost")).returns("cancel", null)
+                .execute(new DefaultRpcService());
+    }
+
+    /**
+     * A server which runs the jobs in this process, and records its name for each job.
+     */
+    private static StubServer.Builder recording(final String name, final List<String> executed) throws IOException {
+        final DefaultRpcService service = new DefaultRpcService();
+        return server(name, new StubServer.Handler() {
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public Object handle(Object[] args) throws Throwable {
+                executed.add(name);
+                return service.execute((Job<Integer>) args[1], (JobToken) args[2]);
+            }
+        });
+    }
+
+    /**
+     * A server which runs a job in {@link #SLOW_MSEC}, or until it is released or the wait is over if the job is slow
+     * and it is the first slow one. The server waits as a managed blocker, so that the pool runs the other jobs
+     * meanwhile.
+     */
+    private static Server slowServer(final String name, final long waitMsec, final List<String> dispatched,
+            final List<Long> dispatchedAt, final List<JobToken> tokens, final List<JobToken> cancelled,
+            final CountDownLatch released) throws IOException {
+        return server(name, new StubServer.Handler() {
+
+            @Override
+            public Object handle(Object[] args) throws Throwable {
+                NameJob job = (NameJob) args[1];
+                if (job.slow) {
+                    dispatched.add(name);
+                    dispatchedAt.add(System.currentTimeMillis());
+                    tokens.add((JobToken) args[2]);
+                    if (dispatched.size() == 1) {
+                        await(released, waitMsec);
+                        return name;
+                    }
+                }
+                await(new CountDownLatch(1), SLOW_MSEC);
+                return name;
+            }
+        }).on("cancel", new StubServer.Handler() {
+
+            @Override
+            public Object handle(Object[] args) {
+                cancelled.add((JobToken) args[1]);
+                return null;
+            }
+        }).build();
+    }
+
+    private static void await(final CountDownLatch latch, final long msec) throws InterruptedException {
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+
+            @Override
+            public boolean block() throws InterruptedException {
+                latch.await(msec, TimeUnit.MILLISECONDS);
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return latch.getCount() == 0;
+            }
+        });
+    }
+
+    public static class SquareJob implements Job<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final int n;
+
+        public SquareJob(int n) {
+            this.n = n;
+        }
+
+        @Override
+        public Integer execute() throws JobException {
+            if (n < 0) {
+                throw new JobException("A negative number: " + n);
+            }
+            return n * n;
+        }
+    }
+
     public static class LocalTestJob implements Job<String>, Serializable {
         private static final long serialVersionUID = 1L;
 
@@ -102,4 +624,30 @@ public class SilicaTest {
         }
 
     }
+
+    /**
+     * A job of which the server returns its name.
+     */
+    public static class NameJob implements Job<String> {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean slow;
+
+        public NameJob(boolean slow) {
+            this.slow = slow;
+        }
+
+        @Override
+        public String execute() throws JobException {
+            return null;
+        }
+    }
+
+    public static class IdempotentNameJob extends NameJob implements Idempotent {
+        private static final long serialVersionUID = 1L;
+
+        public IdempotentNameJob(boolean slow) {
+            super(slow);
+        }
+    }
 }
@@ -0,0 +1,103 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.job;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.silica.Silica;
+import com.silica.rpc.DefaultRpcService;
+import com.silica.rpc.server.Server;
+import com.silica.rpc.server.StubServer;
+import com.silica.service.ServiceException;
+
+public class BatchJobExecutorTest {
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+
+        System.setProperty("SILICA_CONF", "example.properties");
+        Silica.boot(new String[] { "-s", "base.dir=src/test/resources/basedir" });
+    }
+
+    @Test
+    public void testCallInOneBatch() throws Exception {
+
+        List<Integer> batches = new CopyOnWriteArrayList<Integer>();
+        Server server = StubServer.create(new DefaultRpcService(), batches);
+
+        List<Job<String>> jobs = new ArrayList<Job<String>>();
+        for (int i = 0; i < 4; i++) {
+            jobs.add(new Echo(String.valueOf(i)));
+        }
+        BatchJobExecutor<String> executor = new BatchJobExecutor<String>(server, jobs, new JobToken(10000L));
+
+        assertThat(executor.call(), is(Arrays.asList("0", "1", "2", "3")));
+        assertThat(batches, is(Arrays.asList(4)));
+        assertThat(server.getStatistics().getInFlight(), is(0));
+    }
+
+    @Test
+    public void testFailureInBatch() throws Exception {
+
+        Server server = StubServer.create(new DefaultRpcService(), new CopyOnWriteArrayList<Integer>());
+
+        List<Job<String>> jobs = new ArrayList<Job<String>>();
+        jobs.add(new Echo("0"));
+        jobs.add(new Echo(null));
+        try {
+            new BatchJobExecutor<String>(server, jobs, new JobToken(10000L)).call();
+            fail();
+        } catch (ServiceException e) {
+            // The failure of the service, of the job.
+            assertThat(e.getCause(), instanceOf(ServiceException.class));
+            assertThat(e.getCause().getCause(), instanceOf(JobException.class));
+        }
+        assertThat(server.getStatistics().getInFlight(), is(0));
+    }
+
+    /**
+     * Returns the value, or fails without it.
+     */
+    private static class Echo implements Job<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String value;
+
+        Echo(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String execute() throws JobException {
+            if (value == null) {
+                throw new JobException("No value.");
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.job;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+public class JobTokenTest {
+
+    @Test
+    public void testRemainingTimeIsSent() throws Exception {
+
+        JobToken token = new JobToken(60000L);
+        Thread.sleep(20L);
+        JobToken received = copy(token);
+
+        assertThat(received.getId(), is(token.getId()));
+        assertThat(received.getTimeoutMsec(), is(60000L));
+        assertThat(received.getRemainingMsec() <= token.getRemainingMsec() + 10L, is(true));
+        assertThat(received.getRemainingMsec() > 50000L, is(true));
+    }
+
+    @Test
+    public void testNoTimeout() throws Exception {
+
+        JobToken received = copy(new JobToken(0L));
+
+        assertThat(received.getDeadline(), is(0L));
+        assertThat(received.getRemainingMsec(), is(Long.MAX_VALUE));
+        assertThat(received.isExpired(), is(false));
+    }
+
+    private static JobToken copy(JobToken token) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(token);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (JobToken) in.readObject();
+        }
+    }
+}
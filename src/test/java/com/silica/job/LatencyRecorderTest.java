@@ -0,0 +1,51 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.job;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class LatencyRecorderTest {
+
+    @Test
+    public void testPercentile() throws Exception {
+
+        LatencyRecorder recorder = new LatencyRecorder(100, 10);
+        for (int i = 1; i <= 9; i++) {
+            recorder.record(i);
+        }
+        assertEquals(-1L, recorder.percentile(50));
+
+        recorder.record(10);
+        assertEquals(5L, recorder.percentile(50));
+        assertEquals(10L, recorder.percentile(100));
+        assertEquals(1L, recorder.percentile(0));
+    }
+
+    @Test
+    public void testKeepsRecentLatencies() throws Exception {
+
+        LatencyRecorder recorder = new LatencyRecorder(64, 1);
+        for (int i = 0; i < 64; i++) {
+            recorder.record(1000);
+        }
+        for (int i = 0; i < 64; i++) {
+            recorder.record(1);
+        }
+        assertEquals(1L, recorder.percentile(100));
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.resource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.silica.Silica;
+import com.silica.job.Job;
+import com.silica.job.JobException;
+import com.silica.rpc.Resources;
+import com.silica.rpc.server.ServerSelector;
+
+public class ResourceLoaderTest {
+
+    private static final String NAME = "resource-loader-test.txt";
+
+    private File file;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+
+        System.setProperty("SILICA_CONF", "example.properties");
+        Silica.boot(new String[] { "-s", "base.dir=src/test/resources/basedir" });
+    }
+
+    @After
+    public void tearDown() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testDefineResourcesOnce() throws Exception {
+
+        file = create();
+
+        ResourceLoader.Definition[] definitions = ResourceLoader.getDefinitions(ResourceJob.class);
+        assertThat(definitions.length, is(1));
+        assertSame(definitions, ResourceLoader.getDefinitions(ResourceJob.class));
+
+        Resource[] first = ResourceLoader.defineResources(ResourceJob.class);
+        Resource[] second = ResourceLoader.defineResources(ResourceJob.class);
+        assertThat(first.length, is(1));
+        assertThat(first[0].getPath(), is(file.getPath()));
+        assertThat(first[0].getName(), is(NAME));
+        assertSame(first[0].getName(), second[0].getName());
+
+        assertSame(ResourceLoader.getDefinitions(NoResourceJob.class),
+                ResourceLoader.getDefinitions(NoResourceJob.class));
+        assertThat(ResourceLoader.defineResources(NoResourceJob.class) == null, is(true));
+    }
+
+    @Test
+    public void testReadModifiedPermission() throws Exception {
+
+        file = create();
+        file.setExecutable(false);
+        assertThat(ResourceLoader.defineResources(ResourceJob.class)[0].getpermissions(), is(0664));
+
+        // Not read again until the file is modified.
+        file.setExecutable(true);
+        assertThat(ResourceLoader.defineResources(ResourceJob.class)[0].getpermissions(), is(0664));
+
+        file.setLastModified(file.lastModified() + 2000L);
+        assertThat(ResourceLoader.defineResources(ResourceJob.class)[0].getpermissions(), is(0774));
+    }
+
+    private static File create() throws Exception {
+        File f = new File(ServerSelector.createSelector().getLocalServer().getServerContext().getResourceDirectory()
+                + NAME);
+        try (FileOutputStream out = new FileOutputStream(f)) {
+            out.write(NAME.getBytes("UTF-8"));
+        }
+        return f;
+    }
+
+    public static class ResourceJob implements Job<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        @Resources(path = NAME)
+        public String execute() throws JobException {
+            return NAME;
+        }
+    }
+
+    public static class NoResourceJob implements Job<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String execute() throws JobException {
+            return NAME;
+        }
+    }
+}
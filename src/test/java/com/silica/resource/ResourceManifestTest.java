@@ -0,0 +1,75 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.resource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.silica.rpc.DefaultRpcService;
+
+public class ResourceManifestTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDeployOnlyChangedResources() throws Exception {
+
+        File src = folder.newFolder("src");
+        File dest = folder.newFolder("dest");
+        File a = write(new File(src, "a.txt"), "a");
+        File b = write(new File(src, "b.txt"), "b");
+        // b.txt has been deployed before.
+        write(new File(dest, "b.txt"), "b");
+
+        DefaultRpcService service = new DefaultRpcService();
+        ResourceManifest manifest = new ResourceManifest();
+        Resource[] resources = { new Resource(a.getPath(), "a.txt"), new Resource(b.getPath(), "b.txt") };
+
+        List<Resource> changed = manifest.changed(service, dest.getPath(), resources);
+        assertThat(changed.size(), is(1));
+        assertThat(changed.get(0).getName(), is("a.txt"));
+        manifest.deployed(changed);
+
+        assertThat(manifest.changed(service, dest.getPath(), resources).isEmpty(), is(true));
+
+        write(a, "a2");
+        changed = manifest.changed(service, dest.getPath(), resources);
+        assertThat(changed.size(), is(1));
+        assertThat(changed.get(0).getName(), is("a.txt"));
+
+        manifest.clear();
+        assertThat(manifest.changed(service, dest.getPath(), resources).size(), is(1));
+    }
+
+    private static File write(File f, String content) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(f)) {
+            out.write(content.getBytes("UTF-8"));
+        }
+        // The digest is cached by the time and the length of the file.
+        f.setLastModified(f.lastModified() + 2000L);
+        return f;
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.silica.job.Job;
+import com.silica.job.JobException;
+import com.silica.job.JobToken;
+import com.silica.service.ServiceException;
+
+public class DefaultRpcServiceTest {
+
+    @Test
+    public void testExecuteBatchInOrder() throws Exception {
+
+        AtomicInteger executed = new AtomicInteger();
+        List<Job<Integer>> jobs = new ArrayList<Job<Integer>>();
+        for (int i = 0; i < 5; i++) {
+            jobs.add(new Square(i, executed));
+        }
+        assertThat(new DefaultRpcService().executeBatch(jobs, new JobToken(10000L)), is(Arrays.asList(0, 1, 4, 9, 16)));
+        assertThat(executed.get(), is(5));
+    }
+
+    @Test
+    public void testFailureInBatch() throws Exception {
+
+        AtomicInteger executed = new AtomicInteger();
+        List<Job<Integer>> jobs = new ArrayList<Job<Integer>>();
+        jobs.add(new Square(1, executed));
+        jobs.add(new Square(-1, executed));
+        jobs.add(new Square(2, executed));
+        try {
+            new DefaultRpcService().executeBatch(jobs, new JobToken(10000L));
+            fail();
+        } catch (ServiceException e) {
+            assertThat(e.getCause(), instanceOf(JobException.class));
+        }
+        // The jobs after the failed one are not run.
+        assertThat(executed.get(), is(2));
+    }
+
+    @Test
+    public void testCancelBeforeStart() throws Exception {
+
+        DefaultRpcService service = new DefaultRpcService();
+        AtomicInteger executed = new AtomicInteger();
+        JobToken token = new JobToken(0L);
+        service.cancel(token);
+        try {
+            service.execute(new Square(2, executed), token);
+            fail();
+        } catch (ServiceException e) {
+            assertThat(e.getCause(), instanceOf(CancellationException.class));
+        }
+        try {
+            service.executeBatch(Arrays.<Job<Integer>> asList(new Square(2, executed)), token);
+            fail();
+        } catch (ServiceException e) {
+            assertThat(e.getCause(), instanceOf(CancellationException.class));
+        }
+        assertThat(executed.get(), is(0));
+        assertThat(service.heartbeat().getActiveJobs(), is(0));
+        assertThat(Thread.currentThread().isInterrupted(), is(false));
+
+        // The other jobs run.
+        assertThat(service.execute(new Square(2, executed), new JobToken(0L)), is(4));
+    }
+
+    @Test
+    public void testDeadlineInterruptsJob() throws Exception {
+
+        DefaultRpcService service = new DefaultRpcService();
+        long start = System.currentTimeMillis();
+        try {
+            service.execute(new Sleep(), new JobToken(200L));
+            fail();
+        } catch (ServiceException e) {
+            assertThat(e.getCause(), instanceOf(JobException.class));
+            assertThat(e.getCause().getCause(), instanceOf(InterruptedException.class));
+        }
+        assertThat(System.currentTimeMillis() - start < 5000L, is(true));
+        // The interruption is not left to the next job on the thread.
+        assertThat(Thread.currentThread().isInterrupted(), is(false));
+        assertThat(service.heartbeat().getActiveJobs(), is(0));
+    }
+
+    /**
+     * Sleeps until it is interrupted.
+     */
+    static class Sleep implements Job<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Integer execute() throws JobException {
+            try {
+                Thread.sleep(10000L);
+            } catch (InterruptedException e) {
+                throw new JobException("Interrupted.", e);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Squares the number, or fails on a negative number.
+     */
+    static class Square implements Job<Integer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int n;
+        private final transient AtomicInteger executed;
+
+        Square(int n, AtomicInteger executed) {
+            this.n = n;
+            this.executed = executed;
+        }
+
+        @Override
+        public Integer execute() throws JobException {
+            if (executed != null) {
+                executed.incrementAndGet();
+            }
+            if (n < 0) {
+                throw new JobException("A negative number: " + n);
+            }
+            return n * n;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.EOFException;
+import java.rmi.UnmarshalException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.silica.Silica;
+import com.silica.job.Idempotent;
+import com.silica.job.Job;
+import com.silica.job.JobException;
+import com.silica.rpc.server.CircuitBreaker;
+import com.silica.rpc.server.ConcurrencyLimit;
+import com.silica.rpc.server.ConcurrencyLimit.Mode;
+import com.silica.rpc.server.ProbeJob;
+import com.silica.rpc.server.Server;
+import com.silica.rpc.server.ServerContext;
+import com.silica.rpc.server.ServerSelectLogic;
+import com.silica.rpc.server.ServerSelector;
+import com.silica.rpc.server.ServerSelectorTest;
+import com.silica.rpc.server.ServerStatistics;
+import com.silica.rpc.server.StubServer;
+import com.silica.service.Service;
+import com.silica.service.ServiceException;
+
+/**
+ * The jobs for a saturated server or a failed server, on servers of one permit each.
+ */
+public class ProxyServiceTest {
+
+    /**
+     * Selects the first server which is not excluded.
+     */
+    private static final ServerSelectLogic FIRST = new ServerSelectLogic() {
+
+        @Override
+        public Server select(Service service, List<Server> activeServers) {
+            return activeServers.get(0);
+        }
+    };
+
+    @After
+    public void tearDown() throws Exception {
+        boot();
+    }
+
+    @Test
+    public void testOverflow() throws Exception {
+
+        boot();
+        Server a = server("a", null);
+        Server b = server("b", null);
+        ProxyService proxy = proxy(a, b);
+
+        limit(a).tryAcquire(1);
+        assertThat(proxy.execute(new Name()), is("b"));
+        assertThat(limit(a).getInUse(), is(1));
+        assertThat(limit(b).getInUse(), is(0));
+
+        // An unknown policy overflows too.
+        boot("server.saturation.policy=overfow");
+        assertThat(proxy.execute(new Name()), is("b"));
+    }
+
+    @Test
+    public void testWait() throws Exception {
+
+        boot("server.saturation.policy=wait");
+        final Server a = server("a", null);
+        Server b = server("b", null);
+        ProxyService proxy = proxy(a, b);
+
+        limit(a).tryAcquire(1);
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100L);
+                } catch (InterruptedException e) {
+                }
+                limit(a).release(1, false);
+            }
+        }).start();
+        assertThat(proxy.execute(new Name()), is("a"));
+        assertThat(limit(a).getInUse(), is(0));
+    }
+
+    @Test
+    public void testFail() throws Exception {
+
+        boot("server.saturation.policy=fail");
+        Server a = server("a", null);
+        Server b = server("b", null);
+        ProxyService proxy = proxy(a, b);
+
+        limit(a).tryAcquire(1);
+        limit(b).tryAcquire(1);
+        try {
+            proxy.execute(new Name());
+            fail();
+        } catch (ServiceException e) {
+            assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+    }
+
+    @Test
+    public void testReleaseOnFailure() throws Exception {
+
+        boot();
+        Server a = server("a", new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                throw new ServiceException("The job failed.", new JobException("a"));
+            }
+        });
+        Server b = server("b", null);
+        try {
+            proxy(a, b).execute(new Name());
+            fail();
+        } catch (ServiceException e) {
+            // Not retried.
+        }
+        assertThat(limit(a).getInUse(), is(0));
+
+        Server c = server("c", new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                throw new ServiceException("The server is down.", new java.rmi.ConnectException("c"));
+            }
+        });
+        assertThat(proxy(c, b).execute(new Name()), is("b"));
+        assertThat(limit(c).getInUse(), is(0));
+        assertThat(limit(b).getInUse(), is(0));
+    }
+
+    @Test
+    public void testRetryOnConnectFailure() throws Exception {
+
+        boot("job.retry.backoff.msec=10");
+        List<String> dispatched = new CopyOnWriteArrayList<String>();
+        Server a = failing("a", dispatched, new java.rmi.ConnectException("a"));
+        Server b = failing("b", dispatched, new java.rmi.ConnectException("b"));
+        Server c = recording("c", dispatched);
+
+        // Even a job which is not idempotent, on another server each time.
+        assertThat(proxy(a, b, c).execute(new Name()), is("c"));
+        assertThat(dispatched, is(Arrays.asList("a", "b", "c")));
+    }
+
+    @Test
+    public void testMaxAttempts() throws Exception {
+
+        boot("job.retry.backoff.msec=10");
+        List<String> dispatched = new CopyOnWriteArrayList<String>();
+        Server a = failing("a", dispatched, new java.rmi.ConnectException("a"));
+        Server b = failing("b", dispatched, new java.rmi.ConnectException("b"));
+        Server c = failing("c", dispatched, new java.rmi.ConnectException("c"));
+        Server d = recording("d", dispatched);
+        try {
+            proxy(a, b, c, d).execute(new Name());
+            fail();
+        } catch (ServiceException e) {
+            assertThat(e.getCause(), instanceOf(java.rmi.ConnectException.class));
+        }
+        // 3 attempts by default.
+        assertThat(dispatched, is(Arrays.asList("a", "b", "c")));
+    }
+
+    @Test
+    public void testRetryOnBrokenConnection() throws Exception {
+
+        boot("job.retry.backoff.msec=10");
+        List<String> dispatched = new CopyOnWriteArrayList<String>();
+        Server a = failing("a", dispatched, new UnmarshalException("a", new EOFException("a")));
+        Server b = recording("b", dispatched);
+        ProxyService proxy = proxy(a, b);
+
+        // The job which is not idempotent may have started on the server.
+        try {
+            proxy.execute(new Name());
+            fail();
+        } catch (ServiceException e) {
+            assertThat(e.getCause(), instanceOf(UnmarshalException.class));
+        }
+        assertThat(dispatched, is(Arrays.asList("a")));
+
+        dispatched.clear();
+        assertThat(proxy.execute(new IdempotentName()), is("b"));
+        assertThat(dispatched, is(Arrays.asList("a", "b")));
+    }
+
+    @Test
+    public void testOverloadedOnlyOnTimeoutOrRejection() throws Exception {
+
+        boot("job.retry.max.attempts=1");
+        Exception[] failures = {
+                new java.rmi.ConnectException("a"),
+                new TimeoutException("a"),
+                new RejectedExecutionException("a") };
+        int[] limits = { 8, 4, 4 };
+        for (int i = 0; i < failures.length; i++) {
+            final Exception failure = failures[i];
+            Server a = server("a", new ConcurrencyLimit(8, Mode.AIMD), new Callable<String>() {
+
+                @Override
+                public String call() throws Exception {
+                    throw new ServiceException("Could not execute the service.", failure);
+                }
+            });
+            try {
+                proxy(a).execute(new Name());
+                fail();
+            } catch (ServiceException e) {
+                // Not retried.
+            }
+            // A failure to connect is left to the circuit breaker.
+            assertThat(failure.toString(), limit(a).getLimit(), is(limits[i]));
+        }
+    }
+
+    private static ProxyService proxy(Server... servers) throws Exception {
+        ServerSelector selector = ServerSelectorTest.create(FIRST, servers);
+        return new ProxyService(DefaultRpcService.class, null, selector);
+    }
+
+    private static ConcurrencyLimit limit(Server server) {
+        return server.getStatistics().getConcurrencyLimit();
+    }
+
+    /**
+     * A server of one permit, which returns its name for a job unless the execution is given.
+     */
+    private static Server server(final String name, final Callable<String> execution) throws Exception {
+        return server(name, new ConcurrencyLimit(1, Mode.FIXED), execution);
+    }
+
+    private static Server server(final String name, ConcurrencyLimit limit, final Callable<String> execution)
+            throws Exception {
+        final ServerContext context = new ServerContext("localhost");
+        final ServerStatistics statistics = new ServerStatistics(new CircuitBreaker(3, 5000L), limit);
+        return StubServer.builder().name(name).context(context).statistics(statistics)
+                .on("execute", new StubServer.Handler() {
+
+                    @Override
+                    public Object handle(Object[] args) throws Exception {
+                        if (args[1] instanceof ProbeJob) {
+                            return Boolean.TRUE;
+                        }
+                        return execution == null ? name : execution.call();
+                    }
+                }).build();
+    }
+
+    private static Server failing(final String name, final List<String> dispatched, final Exception failure)
+            throws Exception {
+        return server(name, new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                dispatched.add(name);
+                throw new ServiceException("Could not execute the service.", failure);
+            }
+        });
+    }
+
+    private static Server recording(final String name, final List<String> dispatched) throws Exception {
+        return server(name, new Callable<String>() {
+
+            @Override
+            public String call() throws Exception {
+                dispatched.add(name);
+                return name;
+            }
+        });
+    }
+
+    private static void boot(String... props) {
+        System.setProperty("SILICA_CONF", "example.properties");
+        String[] args = new String[2 + props.length * 2];
+        args[0] = "-s";
+        args[1] = "base.dir=src/test/resources/basedir";
+        for (int i = 0; i < props.length; i++) {
+            args[2 + i * 2] = "-s";
+            args[3 + i * 2] = props[i];
+        }
+        Silica.boot(args);
+    }
+
+    private static class Name implements Job<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String execute() throws JobException {
+            return null;
+        }
+    }
+
+    private static class IdempotentName extends Name implements Idempotent {
+
+        private static final long serialVersionUID = 1L;
+    }
+}
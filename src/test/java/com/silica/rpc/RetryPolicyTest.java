@@ -0,0 +1,111 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.EOFException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.rmi.ConnectIOException;
+import java.rmi.MarshalException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.UnmarshalException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import com.silica.Silica;
+import com.silica.job.JobException;
+import com.silica.rpc.server.ServerException;
+import com.silica.service.ServiceException;
+
+public class RetryPolicyTest {
+
+    private final RetryPolicy policy = new RetryPolicy(3, 100L, 2000L);
+
+    @Test
+    public void testConnectFailureIsRetried() throws Exception {
+
+        Exception[] failures = {
+                new java.rmi.ConnectException("a"),
+                new ConnectIOException("a"),
+                new NoSuchObjectException("a"),
+                new NotBoundException("a"),
+                new java.rmi.UnknownHostException("a"),
+                new java.net.ConnectException("a"),
+                new UnknownHostException("a"),
+                new ServerException("a") };
+        for (Exception failure : failures) {
+            // The job has not reached the server, so even a job which is not idempotent is retried.
+            assertThat(failure.toString(), policy.isRetryable(wrap(failure), false), is(true));
+            assertThat(failure.toString(), policy.isRetryable(wrap(failure), true), is(true));
+        }
+    }
+
+    @Test
+    public void testBrokenConnectionIsRetriedForIdempotentJob() throws Exception {
+
+        Exception[] failures = {
+                new MarshalException("a"),
+                new UnmarshalException("a"),
+                new SocketException("a"),
+                new EOFException("a") };
+        for (Exception failure : failures) {
+            assertThat(failure.toString(), policy.isRetryable(wrap(failure), false), is(false));
+            assertThat(failure.toString(), policy.isRetryable(wrap(failure), true), is(true));
+        }
+    }
+
+    @Test
+    public void testFailureOfJobIsNotRetried() throws Exception {
+
+        assertThat(policy.isRetryable(wrap(new JobException("a")), true), is(false));
+        assertThat(policy.isRetryable(wrap(new TimeoutException("a")), true), is(false));
+        // The failure of the job wins over the failure of the connection below it.
+        assertThat(policy.isRetryable(wrap(new JobException("a", new EOFException("a"))), true), is(false));
+        assertThat(policy.isRetryable(new ServiceException("a", new IllegalStateException("a")), true), is(false));
+    }
+
+    @Test
+    public void testBackoff() throws Exception {
+
+        for (int attempt = 1; attempt <= 40; attempt++) {
+            long ceiling = Math.min(100L << Math.min(attempt - 1, 30), 2000L);
+            for (int i = 0; i < 1000; i++) {
+                long backoff = policy.backoff(attempt);
+                assertTrue(backoff >= 0 && backoff <= ceiling);
+            }
+        }
+        assertThat(new RetryPolicy(3, 0L, 2000L).backoff(2), is(0L));
+    }
+
+    @Test
+    public void testDefaultMaxAttempts() throws Exception {
+
+        System.setProperty("SILICA_CONF", "example.properties");
+        Silica.boot(new String[] { "-s", "base.dir=src/test/resources/basedir", "-s", "job.retry.max.attempts=" });
+        assertThat(RetryPolicy.fromConfig().getMaxAttempts(), is(3));
+        assertThat(new RetryPolicy(0, 100L, 2000L).getMaxAttempts(), is(1));
+    }
+
+    private static ServiceException wrap(Exception failure) {
+        return new ServiceException("The server failed.", new ServiceException("Could not execute.", failure));
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.pipe;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public class ArchiveTest {
+
+    @Test
+    public void testArchive() throws Exception {
+
+        byte[] data = "#!/bin/sh\necho silica\n".getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Archive archive = new Archive(out);
+        archive.add("configs/bin/start.sh", 0754, data.length, 1500000000000L, new ByteArrayInputStream(data));
+        archive.close();
+
+        DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())));
+        byte[] header = new byte[512];
+        in.readFully(header);
+        assertThat(text(header, 0, 100), is("configs/bin/start.sh"));
+        assertThat(text(header, 100, 8), is("0000754"));
+        assertThat(Long.parseLong(text(header, 124, 12), 8), is((long) data.length));
+        assertThat(text(header, 257, 6), is("ustar"));
+
+        byte[] content = new byte[512];
+        in.readFully(content);
+        assertThat(Arrays.copyOf(content, data.length), is(data));
+
+        // The end of the archive.
+        byte[] end = new byte[1024];
+        in.readFully(end);
+        assertThat(Arrays.equals(end, new byte[1024]), is(true));
+        assertThat(in.read(), is(-1));
+    }
+
+    @Test
+    public void testLongName() throws Exception {
+
+        String dir = "configs/" + String.format("%0120d", 0);
+        byte[] header = Archive.header(dir + "/server.properties", 0644, 10L, 0L);
+
+        assertThat(text(header, 0, 100), is("server.properties"));
+        assertThat(text(header, 345, 155), is(dir));
+    }
+
+    private static String text(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.pipe;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DeltaTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSendOnlyChangedData() throws Exception {
+
+        byte[] previous = new byte[1 << 20];
+        new Random(1).nextBytes(previous);
+
+        // Insert and change a few bytes in the middle, and append to the tail.
+        byte[] current = new byte[previous.length + 100];
+        System.arraycopy(previous, 0, current, 0, 300000);
+        Arrays.fill(current, 300000, 300050, (byte) 7);
+        System.arraycopy(previous, 300000, current, 300050, previous.length - 300000);
+        Arrays.fill(current, previous.length + 50, current.length, (byte) 9);
+        current[700000] ^= 1;
+
+        File basis = folder.newFile("previous.jar");
+        Files.write(basis.toPath(), previous);
+
+        byte[] delta = delta(basis, current);
+        assertThat(delta.length < current.length / 10, is(true));
+
+        File dest = new File(folder.getRoot(), "current.jar");
+        Delta.patch(basis, new ByteArrayInputStream(delta), dest);
+        assertThat(Arrays.equals(Files.readAllBytes(dest.toPath()), current), is(true));
+    }
+
+    @Test
+    public void testPatchTheFileItself() throws Exception {
+
+        byte[] previous = "The previous copy of the file.".getBytes("UTF-8");
+        byte[] current = "The current copy of the file, which is longer.".getBytes("UTF-8");
+
+        File file = folder.newFile("file.txt");
+        Files.write(file.toPath(), previous);
+
+        Delta.patch(file, new ByteArrayInputStream(delta(file, current)), file);
+        assertThat(Arrays.equals(Files.readAllBytes(file.toPath()), current), is(true));
+    }
+
+    @Test
+    public void testLargerThanTheBuffer() throws Exception {
+
+        byte[] previous = new byte[5 << 20];
+        new Random(2).nextBytes(previous);
+
+        // Change the bytes around the ends of the buffers of 1 MB, and drop a block.
+        byte[] current = previous.clone();
+        for (int i = 1; i < 5; i++) {
+            current[(i << 20) - 1] ^= 1;
+            current[(i << 20) + 3000] ^= 1;
+        }
+        System.arraycopy(previous, 3000000, current, 2990000, 10000);
+
+        File basis = folder.newFile("previous.jar");
+        Files.write(basis.toPath(), previous);
+
+        byte[] delta = delta(basis, current);
+        assertThat(delta.length < current.length / 20, is(true));
+
+        File dest = new File(folder.getRoot(), "current.jar");
+        Delta.patch(basis, new ByteArrayInputStream(delta), dest);
+        assertThat(Arrays.equals(Files.readAllBytes(dest.toPath()), current), is(true));
+    }
+
+    private static byte[] delta(File basis, byte[] current) throws Exception {
+        ByteArrayOutputStream signature = new ByteArrayOutputStream();
+        Delta.signature(basis, signature);
+
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        Delta.delta(Delta.readSignature(new ByteArrayInputStream(signature.toByteArray())),
+                new ByteArrayInputStream(current), delta);
+        return delta.toByteArray();
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.pipe;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+import com.silica.rpc.pipe.SecurePipe.Transfer;
+
+/**
+ * The uploaders of the resources and the basis of a delta, without the SSH session.
+ */
+public class SecurePipeTest {
+
+    @Test
+    public void testUploadInParallel() throws Exception {
+
+        final Transfer transfer = new Transfer(12);
+        final CountDownLatch started = new CountDownLatch(3);
+        final Set<Integer> taken = ConcurrentHashMap.newKeySet();
+        final Set<String> uploaders = ConcurrentHashMap.newKeySet();
+
+        SecurePipe.upload(3, transfer, new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                boolean first = true;
+                int i;
+                while ((i = transfer.next()) >= 0) {
+                    if (first) {
+                        // Every uploader takes a file before any of them goes on.
+                        started.countDown();
+                        started.await(5, TimeUnit.SECONDS);
+                        first = false;
+                    }
+                    uploaders.add(Thread.currentThread().getName() + "@" + Thread.currentThread().getId());
+                    assertThat(taken.add(i), is(true));
+                    transfer.done(1L, "file" + i);
+                }
+                return null;
+            }
+        });
+
+        assertThat(uploaders.size(), is(3));
+        assertThat(taken.size(), is(12));
+        assertThat(transfer.getDone(), is(12));
+    }
+
+    @Test
+    public void testFirstFailure() throws Exception {
+
+        final Transfer transfer = new Transfer(100);
+        final AtomicInteger ids = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        try {
+            SecurePipe.upload(3, transfer, new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    int id = ids.getAndIncrement();
+                    if (id == 1) {
+                        throw new PipeException("first");
+                    }
+                    // The others stop taking the files when the first failure is seen.
+                    while (transfer.next() >= 0) {
+                        done.incrementAndGet();
+                        Thread.sleep(10L);
+                    }
+                    if (id == 0) {
+                        throw new PipeException("second");
+                    }
+                    return null;
+                }
+            });
+            fail();
+        } catch (PipeException e) {
+            assertThat(e.getMessage(), is("first"));
+        }
+        assertThat(ids.get(), is(3));
+        assertThat(done.get() < 100, is(true));
+    }
+
+    @Test
+    public void testFindCompleteBasisDirectory() throws Exception {
+
+        final Set<String> files = new HashSet<String>(Arrays.asList("res/100/.complete", "res/100/a.jar",
+                "res/200/.complete", "res/250/a.jar", "res/300/.complete", "res/300/a.jar"));
+        Predicate<String> exists = new Predicate<String>() {
+
+            @Override
+            public boolean test(String path) {
+                return files.contains(path);
+            }
+        };
+        // 250 is still being put, and 300 is the destination.
+        List<String> ids = Arrays.asList(".", "..", "100", "200", "250", "300");
+
+        assertThat(SecurePipe.findBasisDirectory("res/", ids, "300", "a.jar", exists), is("res/100/"));
+        assertThat(SecurePipe.findBasisDirectory("res/", ids, "300", null, exists), is("res/200/"));
+        assertThat(SecurePipe.findBasisDirectory("res/", ids, "300", "b.jar", exists), is(nullValue()));
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.silica.rpc.server.CircuitBreaker.State;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpenOnConsecutiveFailures() throws Exception {
+
+        CircuitBreaker breaker = new CircuitBreaker(3, 60000L);
+        breaker.failed();
+        breaker.failed();
+        breaker.succeeded();
+        breaker.failed();
+        breaker.failed();
+        assertThat(breaker.getState(), is(State.CLOSED));
+
+        breaker.failed();
+        assertThat(breaker.getState(), is(State.OPEN));
+        assertThat(breaker.tryHalfOpen(), is(false));
+    }
+
+    @Test
+    public void testProbeAfterOpenPeriod() throws Exception {
+
+        final AtomicInteger changes = new AtomicInteger();
+        CircuitBreaker breaker = new CircuitBreaker(1, 0L);
+        breaker.setListener(new Runnable() {
+
+            @Override
+            public void run() {
+                changes.incrementAndGet();
+            }
+        });
+
+        breaker.failed();
+        assertThat(breaker.getState(), is(State.OPEN));
+        assertThat(changes.get(), is(1));
+
+        assertThat(breaker.tryHalfOpen(), is(true));
+        assertThat(breaker.getState(), is(State.HALF_OPEN));
+        breaker.failed();
+        assertThat(breaker.getState(), is(State.OPEN));
+        assertThat(changes.get(), is(1));
+
+        assertThat(breaker.tryHalfOpen(), is(true));
+        breaker.succeeded();
+        assertThat(breaker.getState(), is(State.CLOSED));
+        assertThat(changes.get(), is(2));
+    }
+
+    @Test
+    public void testRecoveredKeepsFailuresOfClosedBreaker() throws Exception {
+
+        CircuitBreaker breaker = new CircuitBreaker(3, 0L);
+        breaker.failed();
+        breaker.failed();
+        breaker.recovered();
+        assertThat(breaker.getState(), is(State.CLOSED));
+        breaker.failed();
+        assertThat(breaker.getState(), is(State.OPEN));
+
+        // An open breaker is closed, and counts the failures from zero.
+        assertThat(breaker.tryHalfOpen(), is(true));
+        breaker.recovered();
+        assertThat(breaker.getState(), is(State.CLOSED));
+        breaker.failed();
+        breaker.failed();
+        assertThat(breaker.getState(), is(State.CLOSED));
+    }
+
+    @Test
+    public void testNeverOpenWithoutThreshold() throws Exception {
+
+        CircuitBreaker breaker = new CircuitBreaker(0, 0L);
+        for (int i = 0; i < 10; i++) {
+            breaker.failed();
+        }
+        assertThat(breaker.isClosed(), is(true));
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.silica.rpc.server.ConcurrencyLimit.Mode;
+
+public class ConcurrencyLimitTest {
+
+    @Test
+    public void testFixedLimit() throws Exception {
+
+        ConcurrencyLimit limit = new ConcurrencyLimit(2, Mode.FIXED);
+        assertThat(limit.tryAcquire(1), is(true));
+        assertThat(limit.tryAcquire(1), is(true));
+        assertThat(limit.tryAcquire(1), is(false));
+        assertThat(limit.acquire(1, 10L), is(false));
+
+        limit.release(1, true);
+        assertThat(limit.getLimit(), is(2));
+        assertThat(limit.tryAcquire(1), is(true));
+    }
+
+    @Test
+    public void testBatchLargerThanLimitOnIdleServer() throws Exception {
+
+        ConcurrencyLimit limit = new ConcurrencyLimit(2, Mode.FIXED);
+        assertThat(limit.tryAcquire(5), is(true));
+        assertThat(limit.tryAcquire(1), is(false));
+
+        limit.release(5, false);
+        assertThat(limit.getInUse(), is(0));
+    }
+
+    @Test
+    public void testNoLimit() throws Exception {
+
+        ConcurrencyLimit limit = new ConcurrencyLimit(0, Mode.AIMD);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(limit.tryAcquire(1), is(true));
+        }
+    }
+
+    @Test
+    public void testAimd() throws Exception {
+
+        ConcurrencyLimit limit = new ConcurrencyLimit(8, Mode.AIMD);
+        assertThat(limit.tryAcquire(1), is(true));
+        limit.release(1, true);
+        assertThat(limit.getLimit(), is(4));
+        limit.tryAcquire(1);
+        limit.release(1, true);
+        limit.tryAcquire(1);
+        limit.release(1, true);
+        limit.tryAcquire(1);
+        limit.release(1, true);
+        assertThat(limit.getLimit(), is(1));
+
+        // Grows while the limit is in use.
+        for (int i = 0; i < 10; i++) {
+            limit.tryAcquire(1);
+            limit.release(1, false);
+        }
+        assertThat(limit.getLimit() > 1, is(true));
+        assertThat(limit.getLimit() <= 8, is(true));
+    }
+
+    @Test
+    public void testWaitForRelease() throws Exception {
+
+        final ConcurrencyLimit limit = new ConcurrencyLimit(1, Mode.FIXED);
+        limit.tryAcquire(1);
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50L);
+                } catch (InterruptedException e) {
+                }
+                limit.release(1, false);
+            }
+        }).start();
+        assertThat(limit.acquire(1, 10000L), is(true));
+    }
+}
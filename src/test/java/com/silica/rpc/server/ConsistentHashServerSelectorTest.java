@@ -0,0 +1,121 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.silica.job.Affinity;
+import com.silica.job.Job;
+import com.silica.job.JobException;
+
+public class ConsistentHashServerSelectorTest {
+
+    private final ConsistentHashServerSelector selector = new ConsistentHashServerSelector() {
+
+        @Override
+        protected String getNodeName(Server server) {
+            return server.toString();
+        }
+    };
+
+    @Test
+    public void testSameKeySameServer() throws Exception {
+
+        List<Server> servers = Arrays.asList(StubServer.create(), StubServer.create(), StubServer.create());
+
+        for (int i = 0; i < 100; i++) {
+            Server server = selector.select(null, new KeyedJob("customer-" + i), servers);
+            assertSame(server, selector.select(null, new KeyedJob("customer-" + i), servers));
+        }
+    }
+
+    @Test
+    public void testOnlyKeysOfRemovedServerMove() throws Exception {
+
+        List<Server> servers = Arrays.asList(StubServer.create(), StubServer.create(), StubServer.create(),
+                StubServer.create());
+        List<Server> before = new ArrayList<Server>();
+        for (int i = 0; i < 1000; i++) {
+            before.add(selector.select(null, new KeyedJob("customer-" + i), servers));
+        }
+
+        Server removed = servers.get(1);
+        List<Server> shrunk = new ArrayList<Server>(servers);
+        shrunk.remove(removed);
+
+        int moved = 0;
+        for (int i = 0; i < 1000; i++) {
+            Server after = selector.select(null, new KeyedJob("customer-" + i), shrunk);
+            if (before.get(i) != removed) {
+                assertSame(before.get(i), after);
+            } else {
+                moved++;
+            }
+        }
+        // About 1/4 of the keys.
+        assertTrue(String.valueOf(moved), moved > 100 && moved < 400);
+    }
+
+    @Test
+    public void testExcludedServerIsSkippedOnTheSameRing() throws Exception {
+        List<Server> servers = Arrays.asList(StubServer.create(), StubServer.create(), StubServer.create(),
+                StubServer.create());
+        Server excluded = servers.get(1);
+        List<Server> shrunk = new ArrayList<Server>(servers);
+        shrunk.remove(excluded);
+
+        for (int i = 0; i < 1000; i++) {
+            KeyedJob job = new KeyedJob("customer-" + i);
+            Server retried = selector.select(null, job, servers, Collections.singleton(excluded));
+            assertNotSame(excluded, retried);
+            Server before = selector.select(null, job, servers);
+            if (before != excluded) {
+                assertSame(before, retried);
+            }
+            assertSame(selector.select(null, job, shrunk), retried);
+        }
+    }
+
+    private static class KeyedJob implements Job<String>, Affinity {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String key;
+
+        KeyedJob(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String execute() throws JobException {
+            return key;
+        }
+
+        @Override
+        public String getAffinityKey() {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class EwmaServerSelectorTest {
+
+    @Test
+    public void testMovingAverage() throws Exception {
+
+        ServerStatistics statistics = new ServerStatistics();
+        assertEquals(-1, statistics.getLatencyNanos(), 0);
+
+        statistics.succeeded(100);
+        assertEquals(100, statistics.getLatencyNanos(), 0);
+        for (int i = 0; i < 100; i++) {
+            statistics.succeeded(200);
+        }
+        assertEquals(200, statistics.getLatencyNanos(), 1);
+
+        statistics.failed();
+        assertThat(statistics.getErrorRate() > 0, is(true));
+        assertThat(statistics.getLastFailure() > 0, is(true));
+    }
+
+    @Test
+    public void testPreferFasterServer() throws Exception {
+
+        ServerStatistics fast = new ServerStatistics();
+        fast.succeeded(1000000);
+        ServerStatistics slow = new ServerStatistics();
+        slow.succeeded(10000000);
+        Server fastServer = StubServer.create(fast);
+        List<Server> servers = Arrays.asList(StubServer.create(slow), fastServer);
+
+        assertTrue(count(fastServer, servers) > 800);
+    }
+
+    @Test
+    public void testPenalizeFailedServer() throws Exception {
+
+        ServerStatistics failed = new ServerStatistics();
+        failed.succeeded(1000000);
+        failed.failed();
+        ServerStatistics healthy = new ServerStatistics();
+        healthy.succeeded(1000000);
+        Server healthyServer = StubServer.create(healthy);
+        List<Server> servers = Arrays.asList(StubServer.create(failed), healthyServer);
+
+        assertTrue(count(healthyServer, servers) > 800);
+    }
+
+    private static int count(Server server, List<Server> servers) {
+        EwmaServerSelector selector = new EwmaServerSelector();
+        int count = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (selector.select(null, servers) == server) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
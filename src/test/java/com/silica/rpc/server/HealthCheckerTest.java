@@ -0,0 +1,154 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.silica.Silica;
+import com.silica.rpc.server.CircuitBreaker.State;
+import com.silica.service.LoadReport;
+
+public class HealthCheckerTest {
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+
+        System.setProperty("SILICA_CONF", "example.properties");
+        Silica.boot(new String[] { "-s", "base.dir=src/test/resources/basedir" });
+    }
+
+    @Test
+    public void testReportLoad() throws Exception {
+
+        Server server = join(new Callable<LoadReport>() {
+
+            @Override
+            public LoadReport call() {
+                return new LoadReport(1, 2, 0.5, 1024L);
+            }
+        });
+        HealthChecker checker = new HealthChecker(selectorOf(server), 1000L);
+        try {
+            checker.check();
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (server.getStatistics().getLoadReport() == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            assertThat(server.getStatistics().getLoadReport().getActiveJobs(), is(2));
+            assertThat(server.getStatistics().getLoadReport().getQueuedJobs(), is(1));
+        } finally {
+            checker.stop();
+        }
+    }
+
+    @Test
+    public void testSlowHeartbeatIsNotFailure() throws Exception {
+
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Server server = join(new Callable<LoadReport>() {
+
+            @Override
+            public LoadReport call() {
+                try {
+                    Thread.sleep(60000L);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            }
+        });
+        HealthChecker checker = new HealthChecker(selectorOf(server), 200L);
+        try {
+            for (int i = 0; i < 3; i++) {
+                checker.check();
+            }
+            assertThat(server.getStatistics().getCircuitBreaker().getState(), is(State.CLOSED));
+
+            // The heartbeat is given up after the timeout.
+            assertThat(interrupted.await(5, TimeUnit.SECONDS), is(true));
+            assertThat(server.getStatistics().getLoadReport() == null, is(true));
+        } finally {
+            checker.stop();
+        }
+    }
+
+    @Test
+    public void testPingKeepsFailuresOfClosedBreaker() throws Exception {
+
+        Server server = join(new CircuitBreaker(2, 60000L), new Callable<LoadReport>() {
+
+            @Override
+            public LoadReport call() {
+                return new LoadReport(0, 0, 0.0, 0L);
+            }
+        });
+        HealthChecker checker = new HealthChecker(selectorOf(server), 1000L);
+        try {
+            CircuitBreaker breaker = server.getStatistics().getCircuitBreaker();
+            breaker.failed();
+            checker.check();
+
+            // The failure of the job is still counted after the ping.
+            breaker.failed();
+            assertThat(breaker.getState(), is(State.OPEN));
+        } finally {
+            checker.stop();
+        }
+    }
+
+    private static ServerSelector selectorOf(final Server server) throws Exception {
+        ServerSelector selector = new ServerSelector(new RoundRobinServerSelector(), new Function<String, Server>() {
+
+            @Override
+            public Server apply(String address) {
+                return server;
+            }
+        });
+        selector.addServer("localhost").get(10, TimeUnit.SECONDS);
+        // A server which has run a job is checked.
+        server.getStatistics().succeeded(1000000L);
+        return selector;
+    }
+
+    /**
+     * A server which responds to the ping, and to the heartbeat by the callable.
+     */
+    private static Server join(final Callable<LoadReport> heartbeat) throws Exception {
+        return join(new CircuitBreaker(1, 60000L), heartbeat);
+    }
+
+    private static Server join(CircuitBreaker breaker, final Callable<LoadReport> heartbeat) throws Exception {
+        final ServerContext context = new ServerContext("localhost");
+        final ServerStatistics statistics = new ServerStatistics(breaker);
+        return StubServer.builder().context(context).statistics(statistics).returns("ping", true)
+                .returns("execute", null).on("heartbeat", new StubServer.Handler() {
+
+                    @Override
+                    public Object handle(Object[] args) throws Exception {
+                        return heartbeat.call();
+                    }
+                }).build();
+    }
+}
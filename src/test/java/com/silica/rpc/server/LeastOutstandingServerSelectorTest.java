@@ -0,0 +1,55 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LeastOutstandingServerSelectorTest {
+
+    @Test
+    public void testSelectLessLoadedServer() throws Exception {
+
+        ServerStatistics busy = new ServerStatistics();
+        busy.begin(10);
+        Server idle = StubServer.create();
+        List<Server> servers = Arrays.asList(StubServer.create(busy), idle);
+
+        LeastOutstandingServerSelector selector = new LeastOutstandingServerSelector();
+        for (int i = 0; i < 100; i++) {
+            assertSame(idle, selector.select(null, servers));
+        }
+    }
+
+    @Test
+    public void testNeverSelectMostLoadedServer() throws Exception {
+
+        ServerStatistics busy = new ServerStatistics();
+        busy.begin(10);
+        Server mostLoaded = StubServer.create(busy);
+        List<Server> servers = Arrays.asList(StubServer.create(), mostLoaded, StubServer.create());
+
+        LeastOutstandingServerSelector selector = new LeastOutstandingServerSelector();
+        for (int i = 0; i < 100; i++) {
+            assertNotSame(mostLoaded, selector.select(null, servers));
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.silica.Silica;
+import com.silica.job.Job;
+import com.silica.job.JobException;
+import com.silica.job.JobToken;
+import com.silica.rpc.DefaultRpcService;
+import com.silica.rpc.server.rmi.DefaultServer;
+
+public class LocalServiceTest {
+
+    @After
+    public void tearDown() throws Exception {
+        boot();
+    }
+
+    @Test
+    public void testFastPathIsOffByDefault() throws Exception {
+
+        boot();
+        DefaultServer server = new DefaultServer(new ServerContext("localhost"));
+
+        assertThat(server.getLocalService(DefaultRpcService.class), nullValue());
+    }
+
+    @Test
+    public void testFastPathRunsOnTheCallerThread() throws Exception {
+
+        boot("local.fast.path=true");
+        DefaultServer server = new DefaultServer(new ServerContext("localhost"));
+
+        assertThat(server.getLocalService(DefaultRpcService.class), notNullValue());
+        assertThat(server.ping(), is(true));
+        assertThat(server.execute(DefaultRpcService.class, new ThreadName(), new JobToken(0L)), is(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void testCopyOnSubmit() throws Exception {
+
+        Append job = new Append();
+        new LocalService(new DefaultRpcService(), false).execute(job);
+        assertThat(job.values.size(), is(1));
+
+        List<String> result = new LocalService(new DefaultRpcService(), true).execute(job);
+        assertThat(result.size(), is(2));
+        assertThat(job.values.size(), is(1));
+    }
+
+    private static void boot(String... props) {
+        System.setProperty("SILICA_CONF", "example.properties");
+        List<String> args = new ArrayList<String>();
+        args.add("-s");
+        args.add("base.dir=src/test/resources/basedir");
+        for (String prop : props) {
+            args.add("-s");
+            args.add(prop);
+        }
+        Silica.boot(args.toArray(new String[args.size()]));
+    }
+
+    private static class ThreadName implements Job<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String execute() throws JobException {
+            return Thread.currentThread().getName();
+        }
+    }
+
+    private static class Append implements Job<ArrayList<String>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ArrayList<String> values = new ArrayList<String>();
+
+        @Override
+        public ArrayList<String> execute() throws JobException {
+            values.add("a");
+            return values;
+        }
+    }
+}
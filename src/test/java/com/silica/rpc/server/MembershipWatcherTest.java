@@ -0,0 +1,79 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.silica.Silica;
+
+public class MembershipWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParseCommasAndLines() {
+        Set<String> addresses = MembershipWatcher.parse(Arrays.asList(
+                "# cluster",
+                "192.168.1.5, 192.168.1.6",
+                "",
+                "192.168.1.7 # new box"));
+
+        assertThat(addresses.size(), is(3));
+        assertThat(addresses.contains("192.168.1.5"), is(true));
+        assertThat(addresses.contains("192.168.1.6"), is(true));
+        assertThat(addresses.contains("192.168.1.7"), is(true));
+    }
+
+    @Test
+    public void testAddAgainAfterFailedJoin() throws Exception {
+
+        System.setProperty("SILICA_CONF", "example.properties");
+        Silica.boot(new String[] { "-s", "base.dir=src/test/resources/basedir" });
+
+        AtomicInteger disactivated = new AtomicInteger();
+        ServerSelector selector = new ServerSelector(new RoundRobinServerSelector(),
+                ServerSelectorTest.factory(new AtomicInteger(), 1, disactivated));
+        File file = folder.newFile("servers");
+        Files.write(file.toPath(), Arrays.asList("localhost"), StandardCharsets.UTF_8);
+        MembershipWatcher watcher = new MembershipWatcher(selector, file);
+
+        watcher.check();
+        while (disactivated.get() == 0 || !selector.selectAll().isEmpty()) {
+            Thread.sleep(10L);
+        }
+
+        // The file has not changed, but the server is added again.
+        watcher.check();
+        Server server = selector.selectAll().get("localhost");
+        assertThat(server != null, is(true));
+        while (!server.getServerContext().isEnable()) {
+            Thread.sleep(10L);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RoundRobinServerSelectorTest {
+
+    @Test
+    public void testSelectEachServerInTurn() throws Exception {
+
+        List<Server> servers = Arrays.asList(StubServer.create(), StubServer.create(), StubServer.create());
+        RoundRobinServerSelector selector = new RoundRobinServerSelector();
+
+        for (int round = 0; round < 3; round++) {
+            for (Server server : servers) {
+                assertSame(server, selector.select(null, servers));
+            }
+        }
+    }
+
+    @Test
+    public void testSelectFromShrunkServers() throws Exception {
+
+        List<Server> servers = Arrays.asList(StubServer.create(), StubServer.create(), StubServer.create());
+        RoundRobinServerSelector selector = new RoundRobinServerSelector();
+        selector.select(null, servers);
+        selector.select(null, servers);
+
+        List<Server> shrunk = servers.subList(0, 1);
+        assertSame(servers.get(0), selector.select(null, shrunk));
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.silica.Silica;
+import com.silica.job.Job;
+
+public class ServerSelectorTest {
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+
+        System.setProperty("SILICA_CONF", "example.properties");
+        Silica.boot(new String[] { "-s", "base.dir=src/test/resources/basedir" });
+    }
+
+    @Test
+    public void testAddServerOnce() throws Exception {
+
+        AtomicInteger created = new AtomicInteger();
+        ServerSelector selector = new ServerSelector(new RoundRobinServerSelector(),
+                factory(created, 0, new AtomicInteger()));
+
+        CompletableFuture<Server> first = selector.addServer("localhost");
+        CompletableFuture<Server> second = selector.addServer("localhost");
+        Server server = first.get(10, TimeUnit.SECONDS);
+
+        assertSame(server, second.get(10, TimeUnit.SECONDS));
+        assertThat(created.get(), is(1));
+        assertThat(server.getServerContext().isEnable(), is(true));
+        assertSame(server, selector.select(null));
+    }
+
+    @Test
+    public void testAddServerAgainAfterFailedJoin() throws Exception {
+
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger disactivated = new AtomicInteger();
+        ServerSelector selector = new ServerSelector(new RoundRobinServerSelector(),
+                factory(created, 1, disactivated));
+
+        try {
+            selector.addServer("localhost").get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            // The server is still booting.
+        }
+        assertThat(selector.selectAll().isEmpty(), is(true));
+        assertThat(disactivated.get(), is(1));
+
+        Server server = selector.addServer("localhost").get(10, TimeUnit.SECONDS);
+        assertThat(created.get(), is(2));
+        assertSame(server, selector.selectAll().get("localhost"));
+        assertSame(server, selector.select(null));
+    }
+
+    @Test
+    public void testRemoveServerAfterDrain() throws Exception {
+
+        AtomicInteger disactivated = new AtomicInteger();
+        ServerSelector selector = new ServerSelector(new RoundRobinServerSelector(),
+                factory(new AtomicInteger(), 0, disactivated));
+        Server server = selector.addServer("localhost").get(10, TimeUnit.SECONDS);
+        server.getStatistics().begin(1);
+
+        CompletableFuture<Void> removed = selector.removeServer("localhost");
+        Thread.sleep(300L);
+
+        // Out of the rotation, but not removed while the job is in flight.
+        assertThat(removed.isDone(), is(false));
+        assertThat(server.getServerContext().isEnable(), is(false));
+        assertSame(server, selector.selectAll().get("localhost"));
+        assertThat(disactivated.get(), is(0));
+
+        server.getStatistics().end(1);
+        removed.get(10, TimeUnit.SECONDS);
+
+        assertThat(selector.selectAll().isEmpty(), is(true));
+        assertThat(disactivated.get(), is(1));
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+
+        // Each probe of the warm up waits for the probes of the other servers.
+        CountDownLatch probing = new CountDownLatch(3);
+        ServerSelector selector = create(new RoundRobinServerSelector(), warming(probing, false),
+                warming(probing, true), warming(probing, false));
+
+        long start = System.currentTimeMillis();
+        Map<String, Boolean> ready = selector.warmUp();
+
+        assertThat(System.currentTimeMillis() - start < 5000L, is(true));
+        assertThat(probing.getCount(), is(0L));
+        assertThat(ready.size(), is(3));
+        assertThat(ready.get("server0"), is(true));
+        assertThat(ready.get("server1"), is(false));
+        assertThat(ready.get("server2"), is(true));
+    }
+
+    @Test
+    public void testDistribute() throws Exception {
+
+        AtomicInteger disactivated = new AtomicInteger();
+        Server a = StubServer.create(new ServerContext("localhost"), true, disactivated);
+        Server b = StubServer.create(new ServerContext("localhost"), true, disactivated);
+        Server c = StubServer.create(new ServerContext("localhost"), true, disactivated);
+        ServerSelector selector = create(new RoundRobinServerSelector(), a, b, c);
+
+        List<Job<?>> jobs = new ArrayList<Job<?>>();
+        for (int i = 0; i < 7; i++) {
+            jobs.add(new ProbeJob());
+        }
+        Map<Server, List<Integer>> shares = selector.distribute(null, jobs);
+
+        // Every job once, in order in each share.
+        assertThat(shares.size(), is(3));
+        List<Integer> sizes = new ArrayList<Integer>();
+        Set<Integer> indexes = new TreeSet<Integer>();
+        for (List<Integer> share : shares.values()) {
+            sizes.add(share.size());
+            for (int i = 1; i < share.size(); i++) {
+                assertThat(share.get(i - 1) < share.get(i), is(true));
+            }
+            indexes.addAll(share);
+        }
+        Collections.sort(sizes);
+        assertThat(sizes, is(Arrays.asList(2, 2, 3)));
+        assertThat(indexes.size(), is(7));
+    }
+
+    /**
+     * A selector of the servers, which have joined in the order. For the tests of the other packages.
+     */
+    public static ServerSelector create(ServerSelectLogic selectLogic, final Server... servers) throws Exception {
+        final AtomicInteger created = new AtomicInteger();
+        ServerSelector selector = new ServerSelector(selectLogic, new Function<String, Server>() {
+
+            @Override
+            public Server apply(String address) {
+                return servers[created.getAndIncrement()];
+            }
+        });
+        for (int i = 0; i < servers.length; i++) {
+            selector.addServer("server" + i).get(10, TimeUnit.SECONDS);
+        }
+        return selector;
+    }
+
+    /**
+     * Replace the selector of {@link ServerSelector#createSelector()} by a selector of the servers, until
+     * {@link #restore()}. For the tests of the other packages.
+     */
+    public static ServerSelector replace(ServerSelectLogic selectLogic, Server... servers) throws Exception {
+        ServerSelector selector = create(selectLogic, servers);
+        ServerSelector.replace(selector);
+        return selector;
+    }
+
+    public static void restore() {
+        ServerSelector.replace(null);
+    }
+
+    /**
+     * A server which joins, and then runs a probe job once all the servers are probing. For the tests of the other
+     * packages.
+     * 
+     * @param fails
+     *            true if the probe after joining fails
+     */
+    public static Server warming(final CountDownLatch probing, final boolean fails) throws IOException {
+        final AtomicInteger probes = new AtomicInteger();
+        return StubServer.builder().context(new ServerContext("localhost")).on("execute", new StubServer.Handler() {
+
+            @Override
+            public Object handle(Object[] args) throws Throwable {
+                if (probes.incrementAndGet() == 1) {
+                    return null;
+                }
+                probing.countDown();
+                if (!probing.await(5L, TimeUnit.SECONDS)) {
+                    throw new ServerException("The servers are not probed in parallel.");
+                }
+                if (fails) {
+                    throw new ServerException("The server is down.");
+                }
+                return null;
+            }
+        }).build();
+    }
+
+    /**
+     * @param failures
+     *            the number of the servers which fail to join first
+     */
+    static Function<String, Server> factory(final AtomicInteger created, final int failures,
+            final AtomicInteger disactivated) {
+        return new Function<String, Server>() {
+
+            @Override
+            public Server apply(String address) {
+                try {
+                    boolean ready = created.incrementAndGet() > failures;
+                    return StubServer.create(new ServerContext(address), ready, disactivated);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+}
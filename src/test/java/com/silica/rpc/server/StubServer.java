@@ -0,0 +1,202 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.silica.job.Job;
+import com.silica.job.JobToken;
+import com.silica.service.Service;
+
+/**
+ * Servers for the tests, which answer the calls by the handlers given to the {@link Builder}.
+ */
+public final class StubServer {
+
+    private StubServer() {
+    }
+
+    /**
+     * Answers a call of the method of the server.
+     */
+    public interface Handler {
+
+        Object handle(Object[] args) throws Throwable;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A server which only has the statistics, for the tests of the select logics.
+     */
+    static Server create() {
+        return create(new ServerStatistics());
+    }
+
+    static Server create(ServerStatistics statistics) {
+        return builder().statistics(statistics).build();
+    }
+
+    /**
+     * A server which joins by a probe job, or fails to activate if it is not ready.
+     * 
+     * @param disactivated
+     *            counts the calls of disactivate
+     */
+    static Server create(ServerContext context, final boolean ready, final AtomicInteger disactivated) {
+        return builder().context(context).returns("execute", null).on("activate", new Handler() {
+
+            @Override
+            public Object handle(Object[] args) throws Throwable {
+                if (!ready) {
+                    throw new ServerException("The server is still booting.");
+                }
+                return null;
+            }
+        }).on("disactivate", new Handler() {
+
+            @Override
+            public Object handle(Object[] args) {
+                disactivated.incrementAndGet();
+                return null;
+            }
+        }).build();
+    }
+
+    /**
+     * A server which runs the jobs on the service in this process. For the tests of the other packages.
+     * 
+     * @param batches
+     *            the sizes of the batches which the server has received, which may be added from any thread
+     */
+    public static Server create(final Service service, final List<Integer> batches) throws IOException {
+        return builder().context(new ServerContext("localhost")).execute(service).on("executeBatch", new Handler() {
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public Object handle(Object[] args) throws Throwable {
+                batches.add(((List<?>) args[1]).size());
+                return service.executeBatch((List<Job<Serializable>>) args[1], (JobToken) args[2]);
+            }
+        }).build();
+    }
+
+    /**
+     * Builds a server. The server answers getServerContext, getStatistics, equals, hashCode and toString by
+     * itself, activate and disactivate by doing nothing, and any other method by the handler of it, or fails
+     * with {@link UnsupportedOperationException}.
+     */
+    public static final class Builder {
+
+        private final Map<String, Handler> handlers = new HashMap<String, Handler>();
+
+        private String name;
+        private ServerContext context;
+        private ServerStatistics statistics = new ServerStatistics();
+
+        private Builder() {
+            returns("activate", null);
+            returns("disactivate", null);
+        }
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder context(ServerContext context) {
+            this.context = context;
+            return this;
+        }
+
+        public Builder statistics(ServerStatistics statistics) {
+            this.statistics = statistics;
+            return this;
+        }
+
+        public Builder on(String method, Handler handler) {
+            handlers.put(method, handler);
+            return this;
+        }
+
+        public Builder returns(String method, final Object value) {
+            return on(method, new Handler() {
+
+                @Override
+                public Object handle(Object[] args) {
+                    return value;
+                }
+            });
+        }
+
+        /**
+         * Runs the jobs of execute on the service in this process.
+         */
+        public Builder execute(final Service service) {
+            return on("execute", new Handler() {
+
+                @SuppressWarnings("unchecked")
+                @Override
+                public Object handle(Object[] args) throws Throwable {
+                    return service.execute((Job<Serializable>) args[1], (JobToken) args[2]);
+                }
+            });
+        }
+
+        public Server build() {
+            final String name = this.name;
+            final ServerContext context = this.context;
+            final ServerStatistics statistics = this.statistics;
+            final Map<String, Handler> handlers = new HashMap<String, Handler>(this.handlers);
+            return (Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[] { Server.class },
+                    new InvocationHandler() {
+
+                        @Override
+                        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                            switch (method.getName()) {
+                            case "getServerContext":
+                                return context;
+                            case "getStatistics":
+                                return statistics;
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "toString":
+                                return name != null ? name
+                                        : "StubServer@" + Integer.toHexString(System.identityHashCode(proxy));
+                            default:
+                                Handler handler = handlers.get(method.getName());
+                                if (handler == null) {
+                                    throw new UnsupportedOperationException(method.getName());
+                                }
+                                return handler.handle(args);
+                            }
+                        }
+                    });
+        }
+    }
+}
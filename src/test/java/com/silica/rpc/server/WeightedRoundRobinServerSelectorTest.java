@@ -0,0 +1,111 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class WeightedRoundRobinServerSelectorTest {
+
+    private final Map<Server, Integer> weights = new HashMap<Server, Integer>();
+
+    private final WeightedRoundRobinServerSelector selector = new WeightedRoundRobinServerSelector() {
+
+        @Override
+        protected int getWeight(Server server) {
+            return weights.get(server);
+        }
+    };
+
+    @Test
+    public void testSmoothSequence() throws Exception {
+
+        Server a = server(5);
+        Server b = server(1);
+        Server c = server(1);
+        List<Server> servers = Arrays.asList(a, b, c);
+
+        for (Server expected : Arrays.asList(a, a, b, a, c, a, a, a, a, b, a, c, a, a)) {
+            assertSame(expected, selector.select(null, servers));
+        }
+    }
+
+    @Test
+    public void testProportionAndZeroWeight() throws Exception {
+
+        Server big = server(64);
+        Server small = server(8);
+        Server drained = server(0);
+        List<Server> servers = Arrays.asList(big, small, drained);
+
+        Map<Server, Integer> counts = new HashMap<Server, Integer>();
+        for (int i = 0; i < 720; i++) {
+            Server server = selector.select(null, servers);
+            Integer count = counts.get(server);
+            counts.put(server, count == null ? 1 : count + 1);
+        }
+        assertEquals(Integer.valueOf(640), counts.get(big));
+        assertEquals(Integer.valueOf(80), counts.get(small));
+        assertEquals(null, counts.get(drained));
+    }
+
+    @Test
+    public void testSmoothSequenceOverNewLists() throws Exception {
+
+        Server a = server(5);
+        Server b = server(1);
+        Server c = server(1);
+        List<Server> servers = Arrays.asList(a, b, c);
+
+        for (Server expected : Arrays.asList(a, a, b, a, c, a, a, a, a, b, a, c, a, a)) {
+            assertSame(expected, selector.select(null, null, new ArrayList<Server>(servers)));
+        }
+    }
+
+    @Test
+    public void testExcludedServer() throws Exception {
+
+        Server a = server(5);
+        Server b = server(1);
+        Server c = server(1);
+        List<Server> servers = Arrays.asList(a, b, c);
+
+        assertSame(a, selector.select(null, null, servers));
+        assertSame(a, selector.select(null, null, servers));
+        // a retry excluding a selects from b and c.
+        assertSame(b, selector.select(null, null, servers, Collections.singleton(a)));
+        assertSame(c, selector.select(null, null, servers, Collections.singleton(a)));
+        assertSame(c, selector.select(null, null, servers, Arrays.asList(a, b)));
+        // a keeps its gains, so the state is not reset.
+        assertSame(b, selector.select(null, null, servers));
+        assertSame(a, selector.select(null, null, servers));
+    }
+
+    private Server server(int weight) {
+        Server server = StubServer.create();
+        weights.put(server, weight);
+        return server;
+    }
+}
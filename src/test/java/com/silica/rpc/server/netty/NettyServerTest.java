@@ -0,0 +1,278 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server.netty;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.silica.Config;
+import com.silica.Silica;
+import com.silica.job.Job;
+import com.silica.job.JobException;
+import com.silica.job.JobToken;
+import com.silica.rpc.DefaultRpcService;
+import com.silica.rpc.server.ServerContext;
+import com.silica.rpc.server.netty.NettyRequest.Method;
+
+/**
+ * Round trips to a Netty service on the loopback.
+ */
+public class NettyServerTest {
+
+    private NettyServer server;
+    private NettyConnection connection;
+    private NettyServiceStub stub;
+    private int port;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+
+        System.setProperty("SILICA_CONF", "example.properties");
+        Silica.boot(new String[] { "-s", "base.dir=src/test/resources/basedir" });
+    }
+
+    @Before
+    public void setUp() throws Exception {
+
+        ServerContext context = new ServerContext("localhost");
+        port = context.getNettyListenPort();
+        server = new NettyServer(context);
+        server.bindLocal(new DefaultRpcService());
+
+        connection = NettyConnection.open("localhost", port);
+        stub = new NettyServiceStub(connection,
+                Silica.getGlobalConfig(Config.KEY_VERSION) + DefaultRpcService.class.getName(), 5000L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        connection.close();
+        try {
+            server.unbind(DefaultRpcService.class);
+        } catch (Exception e) {
+            // Already unbound by the test.
+        }
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+
+        assertThat(stub.execute(new Echo("a"), new JobToken(0L)), is("a"));
+        assertThat(stub.execute(new Echo("b")), is("b"));
+    }
+
+    @Test
+    public void testExecuteBatch() throws Exception {
+
+        List<Job<String>> jobs = new ArrayList<Job<String>>();
+        for (int i = 0; i < 5; i++) {
+            jobs.add(new Echo(String.valueOf(i)));
+        }
+        assertThat(stub.executeBatch(jobs, new JobToken(0L)), is(Arrays.asList("0", "1", "2", "3", "4")));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+
+        final JobToken token = new JobToken(0L);
+        CompletableFuture<String> result = CompletableFuture.supplyAsync(new Supplier<String>() {
+
+            @Override
+            public String get() {
+                try {
+                    return stub.execute(new Sleep(60000L), token);
+                } catch (RemoteException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        while (stub.heartbeat().getActiveJobs() == 0) {
+            Thread.sleep(10L);
+        }
+        stub.cancel(token);
+
+        assertThat(result.get(5, TimeUnit.SECONDS), is("interrupted"));
+    }
+
+    @Test
+    public void testError() throws Exception {
+
+        try {
+            stub.execute(new Failure(), new JobToken(0L));
+            fail();
+        } catch (RemoteException e) {
+            assertThat(e.getCause(), instanceOf(JobException.class));
+        }
+        // The connection is still usable.
+        assertThat(stub.execute(new Echo("a"), new JobToken(0L)), is("a"));
+    }
+
+    @Test
+    public void testGiveUpAfterDeadline() throws Exception {
+
+        long start = System.currentTimeMillis();
+        try {
+            stub.execute(new Busy(5000L), new JobToken(200L));
+            fail();
+        } catch (RemoteException e) {
+            assertThat(e.getCause(), instanceOf(TimeoutException.class));
+        }
+        assertThat(System.currentTimeMillis() - start < 4000L, is(true));
+    }
+
+    @Test
+    public void testFailPendingCallsOnClose() throws Exception {
+
+        CompletableFuture<String> result = CompletableFuture.supplyAsync(new Supplier<String>() {
+
+            @Override
+            public String get() {
+                try {
+                    return stub.execute(new Sleep(60000L), new JobToken(0L));
+                } catch (RemoteException e) {
+                    return e.getClass().getSimpleName();
+                }
+            }
+        });
+        while (stub.heartbeat().getActiveJobs() == 0) {
+            Thread.sleep(10L);
+        }
+        connection.close();
+
+        assertThat(result.get(5, TimeUnit.SECONDS), is("UnmarshalException"));
+        try {
+            stub.execute(new Echo("a"), new JobToken(0L));
+            fail();
+        } catch (RemoteException e) {
+            // Not sent on the closed connection.
+        }
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+
+        connection.call(new NettyRequest(null, Method.SHUTDOWN), 5000L);
+
+        assertThat(isStopped(), is(true));
+    }
+
+    @Test
+    public void testUnbindFromAnotherJvm() throws Exception {
+
+        // A server of -o unbind, which has bound nothing.
+        new NettyServer(new ServerContext("localhost")).unbind(DefaultRpcService.class);
+
+        assertThat(isStopped(), is(true));
+    }
+
+    private boolean isStopped() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                NettyConnection.open("localhost", port).close();
+                Thread.sleep(50L);
+            } catch (IOException e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class Echo implements Job<String>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String value;
+
+        public Echo(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String execute() throws JobException {
+            return value;
+        }
+    }
+
+    public static class Sleep implements Job<String>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long msec;
+
+        public Sleep(long msec) {
+            this.msec = msec;
+        }
+
+        @Override
+        public String execute() throws JobException {
+            try {
+                Thread.sleep(msec);
+                return "slept";
+            } catch (InterruptedException e) {
+                return "interrupted";
+            }
+        }
+    }
+
+    /**
+     * A job which does not respond to the interruption.
+     */
+    public static class Busy implements Job<String>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long msec;
+
+        public Busy(long msec) {
+            this.msec = msec;
+        }
+
+        @Override
+        public String execute() throws JobException {
+            long end = System.currentTimeMillis() + msec;
+            while (System.currentTimeMillis() < end) {
+                Thread.yield();
+            }
+            return "done";
+        }
+    }
+
+    public static class Failure implements Job<String>, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String execute() throws JobException {
+            throw new JobException("failed");
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.rpc.server.rmi;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
+import java.rmi.registry.Registry;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.silica.Config;
+import com.silica.Silica;
+import com.silica.job.Job;
+import com.silica.job.JobException;
+import com.silica.job.JobToken;
+import com.silica.rpc.DefaultRpcService;
+import com.silica.rpc.server.ServerContext;
+import com.silica.service.Service;
+import com.silica.service.ServiceException;
+
+/**
+ * The stubs of the services on a registry of stubs.
+ */
+public class DefaultServerTest {
+
+    private static final String NAME = DefaultRpcService.class.getName();
+
+    /*
+     * The failures of the next lookups and executions, in order.
+     */
+    private final List<Exception> lookupFailures = new CopyOnWriteArrayList<Exception>();
+    private final List<Exception> executeFailures = new CopyOnWriteArrayList<Exception>();
+    private final Map<String, AtomicInteger> lookups = new ConcurrentHashMap<String, AtomicInteger>();
+    private final AtomicInteger bound = new AtomicInteger();
+
+    private DefaultServer server;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+
+        System.setProperty("SILICA_CONF", "example.properties");
+        Silica.boot(new String[] { "-s", "base.dir=src/test/resources/basedir" });
+    }
+
+    @Before
+    public void setUp() throws Exception {
+
+        final Registry registry = registry();
+        server = new DefaultServer(new ServerContext("localhost")) {
+
+            @Override
+            protected Registry locateRegistry() {
+                return registry;
+            }
+
+            @Override
+            protected void bindLocal(Service service) {
+                bound.incrementAndGet();
+            }
+        };
+    }
+
+    @Test
+    public void testStubIsCached() throws Exception {
+
+        assertThat(execute(), is("done"));
+        assertThat(execute(), is("done"));
+        assertThat(lookups(), is(1));
+    }
+
+    @Test
+    public void testStubIsEvictedOnConnectionError() throws Exception {
+
+        Exception[] failures = { new ConnectException("a"), new NoSuchObjectException("a") };
+        for (int i = 0; i < failures.length; i++) {
+            assertThat(execute(), is("done"));
+            executeFailures.add(failures[i]);
+            try {
+                execute();
+                fail();
+            } catch (ServiceException e) {
+                assertThat(e.getCause(), instanceOf(failures[i].getClass()));
+            }
+            // Looked up again.
+            assertThat(execute(), is("done"));
+            assertThat(lookups(), is(i + 2));
+        }
+    }
+
+    @Test
+    public void testStubIsKeptOnFailureOfJob() throws Exception {
+
+        assertThat(execute(), is("done"));
+        executeFailures.add(new ServiceException("Job execution failed.", new JobException("a")));
+        try {
+            execute();
+            fail();
+        } catch (ServiceException e) {
+            // The failure of the job.
+        }
+        assertThat(execute(), is("done"));
+        assertThat(lookups(), is(1));
+    }
+
+    @Test
+    public void testLookupIsRetriedOnlyWhenNotBound() throws Exception {
+
+        // The service is bound again and looked up again.
+        lookupFailures.add(new NotBoundException(NAME));
+        assertThat(execute(), is("done"));
+        assertThat(lookups(), is(2));
+        assertThat(bound.get(), is(1));
+
+        // The proxy retries the job on another server instead.
+        lookups.clear();
+        executeFailures.add(new ConnectException("a"));
+        try {
+            execute();
+            fail();
+        } catch (ServiceException e) {
+            // Evicted.
+        }
+        lookupFailures.add(new ConnectException("a"));
+        try {
+            execute();
+            fail();
+        } catch (ServiceException e) {
+            assertThat(e.getCause(), instanceOf(ConnectException.class));
+        }
+        assertThat(lookups(), is(1));
+        assertThat(bound.get(), is(1));
+    }
+
+    private String execute() throws ServiceException {
+        return server.execute(DefaultRpcService.class, new Done(), new JobToken(0L));
+    }
+
+    private int lookups() {
+        AtomicInteger count = lookups.get(Silica.getGlobalConfig(Config.KEY_VERSION) + NAME);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * A registry, where the server is running and the service returns "done" for a job.
+     */
+    private Registry registry() {
+        final Service service = (Service) Proxy.newProxyInstance(Service.class.getClassLoader(),
+                new Class<?>[] { Service.class }, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("execute")) {
+                            if (!executeFailures.isEmpty()) {
+                                throw executeFailures.remove(0);
+                            }
+                            return "done";
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        return (Registry) Proxy.newProxyInstance(Registry.class.getClassLoader(), new Class<?>[] { Registry.class },
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (!method.getName().equals("lookup")) {
+                            throw new UnsupportedOperationException(method.getName());
+                        }
+                        String name = (String) args[0];
+                        if (name.equals("_silica")) {
+                            // The registry is running.
+                            throw new NotBoundException(name);
+                        }
+                        AtomicInteger count = lookups.get(name);
+                        if (count == null) {
+                            lookups.put(name, count = new AtomicInteger());
+                        }
+                        count.incrementAndGet();
+                        if (!lookupFailures.isEmpty()) {
+                            throw lookupFailures.remove(0);
+                        }
+                        return service;
+                    }
+                });
+    }
+
+    private static class Done implements Job<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String execute() throws JobException {
+            return null;
+        }
+    }
+}
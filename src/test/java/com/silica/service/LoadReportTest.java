@@ -0,0 +1,46 @@
+/**
+ *    Copyright (C) 2011-2016 sndyuk
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.silica.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class LoadReportTest {
+
+    @Test
+    public void testCurrent() throws Exception {
+
+        LoadReport report = LoadReport.current(0, 3);
+
+        assertThat(report.getActiveJobs(), is(3));
+        assertThat(report.getQueuedJobs(), is(0));
+        assertThat(report.getFreeHeapBytes() > 0, is(true));
+        assertThat(report.getCpuLoad() >= 0 || report.getCpuLoad() == -1, is(true));
+    }
+
+    @Test
+    public void testWithQueuedJobs() throws Exception {
+
+        LoadReport report = new LoadReport(0, 3, 0.5, 1024L).withQueuedJobs(5);
+
+        assertThat(report.getQueuedJobs(), is(5));
+        assertThat(report.getActiveJobs(), is(3));
+        assertThat(report.getCpuLoad(), is(0.5));
+        assertThat(report.getFreeHeapBytes(), is(1024L));
+    }
+}